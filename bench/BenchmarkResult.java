@@ -0,0 +1,115 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// One benchmark result, laid out like a JMH JSON result so existing JMH report tools can read the file
+public class BenchmarkResult {
+    private final String benchmark;
+    private final String mode;
+    private final int threads;
+    private final int forks = 1;
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final Map<String, String> params = new LinkedHashMap<>();
+    private final Metric primaryMetric;
+    private final Map<String, Metric> secondaryMetrics = new LinkedHashMap<>();
+
+    // A throughput result in operations per second
+    public BenchmarkResult(String benchmark, int threads, int poolSize, int shards, int warmupIterations,
+                           List<Double> scores) {
+        this(benchmark, "thrpt", "ops/s", threads, warmupIterations, scores);
+        if (poolSize > 0) {
+            params.put("poolSize", String.valueOf(poolSize));
+        }
+        params.put("shards", String.valueOf(shards));
+    }
+
+    // A result in any JMH mode, for example "avgt" with a unit of "ms/op" for an average time
+    public BenchmarkResult(String benchmark, String mode, String unit, int threads, int warmupIterations,
+                           List<Double> scores) {
+        this.benchmark = benchmark;
+        this.mode = mode;
+        this.threads = threads;
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = scores.size();
+        this.primaryMetric = new Metric(scores, unit);
+    }
+
+    public BenchmarkResult withParam(String name, Object value) {
+        params.put(name, String.valueOf(value));
+        return this;
+    }
+
+    // Adds a metric measured alongside the score, for example "gc.alloc.rate.norm" in B/op as JMH's GC profiler names it
+    public BenchmarkResult withSecondaryMetric(String name, List<Double> scores, String unit) {
+        secondaryMetrics.put(name, new Metric(scores, unit));
+        return this;
+    }
+
+    // Mean of a secondary metric, NaN if it was not measured
+    public double getSecondaryScore(String name) {
+        Metric metric = secondaryMetrics.get(name);
+        return metric == null ? Double.NaN : metric.score;
+    }
+
+    public String getBenchmark() {
+        return benchmark;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public String getPoolSize() {
+        return getParam("poolSize");
+    }
+
+    public String getParam(String name) {
+        return params.getOrDefault(name, "-");
+    }
+
+    public double getScore() {
+        return primaryMetric.score;
+    }
+
+    public double getScoreError() {
+        return primaryMetric.scoreError;
+    }
+
+    public String getScoreUnit() {
+        return primaryMetric.scoreUnit;
+    }
+
+    // Mean score over the measured iterations with a 99.9% confidence interval
+    private static final class Metric {
+        private static final double Z_99_9 = 3.291; // Normal approximation, close enough for the usual 5 or more iterations
+
+        private final double score;
+        private final double scoreError;
+        private final double[] scoreConfidence;
+        private final String scoreUnit;
+        private final double[][] rawData;
+
+        private Metric(List<Double> scores, String scoreUnit) {
+            this.scoreUnit = scoreUnit;
+            int n = scores.size();
+            double sum = 0;
+            for (double value : scores) {
+                sum += value;
+            }
+            double mean = sum / n;
+            double squares = 0;
+            for (double value : scores) {
+                squares += (value - mean) * (value - mean);
+            }
+            double error = n > 1 ? Z_99_9 * Math.sqrt(squares / (n - 1)) / Math.sqrt(n) : Double.NaN;
+            this.score = mean;
+            this.scoreError = error;
+            this.scoreConfidence = new double[] {mean - error, mean + error};
+            this.rawData = new double[1][n];
+            for (int i = 0; i < n; i++) {
+                rawData[0][i] = scores.get(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+// Measures the TicketPool and logging hot paths at several thread counts and pool sizes
+// Every iteration runs a fixed number of operations split over the threads on freshly built state,
+// and the throughput of each benchmark is written to a JSON file that can be compared between releases
+public class BenchmarkRunner {
+    private static final String DEFAULT_OUTPUT = "benchmark-results.json";
+    private static final String BENCHMARK_LOG_FILE = "benchmark_logs.txt";
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm"; // Named as in JMH's GC profiler
+    // Per-thread allocation counters, available on HotSpot based JVMs
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private int[] threadCounts = {1, 8, 64};
+    private int[] poolSizes = {1_000, 10_000, 100_000, 1_000_000};
+    private int shards = Constants.DEFAULT_POOL_SHARDS;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private int operationsPerIteration = 200_000;
+    private String output = DEFAULT_OUTPUT;
+    private Set<PoolBenchmark> benchmarks = defaultBenchmarks();
+    private volatile long sink; // Receives the operation results so the JIT cannot drop the calls
+
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        runner.runAll();
+    }
+
+    private static Set<PoolBenchmark> defaultBenchmarks() {
+        Set<PoolBenchmark> defaults = EnumSet.noneOf(PoolBenchmark.class);
+        for (PoolBenchmark benchmark : PoolBenchmark.values()) {
+            if (benchmark.isRunByDefault()) {
+                defaults.add(benchmark);
+            }
+        }
+        return defaults;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BenchmarkRunner [--threads 1,8,64] [--sizes 1000,10000,100000,1000000] [--shards 1]");
+        System.err.println("                       [--warmup 3] [--iterations 5] [--ops 200000]");
+        System.err.println("                       [--bench ADD_TICKETS,REMOVE_TICKET,...] [--out " + DEFAULT_OUTPUT + "]");
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--threads":
+                    threadCounts = parsePositiveInts(value);
+                    break;
+                case "--sizes":
+                    poolSizes = parsePositiveInts(value);
+                    break;
+                case "--shards":
+                    shards = parsePositiveInts(value)[0];
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    measurementIterations = parsePositiveInts(value)[0];
+                    break;
+                case "--ops":
+                    operationsPerIteration = parsePositiveInts(value)[0];
+                    break;
+                case "--bench":
+                    benchmarks = EnumSet.noneOf(PoolBenchmark.class);
+                    for (String name : value.split(",")) {
+                        benchmarks.add(PoolBenchmark.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+    }
+
+    private static int[] parsePositiveInts(String value) {
+        String[] parts = value.split(",");
+        int[] numbers = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            numbers[i] = Integer.parseInt(parts[i].trim());
+            if (numbers[i] <= 0) {
+                throw new IllegalArgumentException("Expected positive numbers but got " + value);
+            }
+        }
+        return numbers;
+    }
+
+    private void runAll() {
+        // Every run starts a new benchmark log, the entries from earlier runs are of no use
+        try {
+            Files.deleteIfExists(Paths.get(BENCHMARK_LOG_FILE));
+        } catch (IOException e) {
+            System.err.println("Failed to delete the old benchmark log: " + e.getMessage());
+        }
+        // Drop log entries rather than wait for the disk, the benchmarks measure the callers and not the log file
+        Utils.startLogWriter(BENCHMARK_LOG_FILE, Constants.DEFAULT_LOG_FLUSH_INTERVAL, Constants.DEFAULT_LOG_BATCH_SIZE,
+                LogOverflowPolicy.DROP);
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (PoolBenchmark benchmark : benchmarks) {
+            int[] sizes = benchmark.usesPoolSize() ? poolSizes : new int[] {0};
+            for (int threads : threadCounts) {
+                for (int poolSize : sizes) {
+                    BenchmarkResult result = measure(benchmark, threads, poolSize);
+                    results.add(result);
+                    System.out.printf("%-24s threads=%-3d poolSize=%-8s %,16.0f +- %,.0f ops/s %,10.1f B/op%n",
+                            result.getBenchmark(), result.getThreads(), result.getPoolSize(),
+                            result.getScore(), result.getScoreError(), result.getSecondaryScore(ALLOCATION_METRIC));
+                }
+            }
+        }
+        Utils.shutdownLogWriter();
+        writeResults(results);
+    }
+
+    private BenchmarkResult measure(PoolBenchmark benchmark, int threads, int poolSize) {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(benchmark, threads, poolSize);
+        }
+        List<Double> scores = new ArrayList<>(measurementIterations);
+        List<Double> allocations = new ArrayList<>(measurementIterations);
+        for (int i = 0; i < measurementIterations; i++) {
+            Iteration iteration = runIteration(benchmark, threads, poolSize);
+            scores.add(iteration.operationsPerSecond);
+            allocations.add(iteration.bytesPerOperation);
+        }
+        BenchmarkResult result = new BenchmarkResult(benchmark.name(), threads, poolSize, shards, warmupIterations, scores);
+        if (THREADS != null) {
+            result.withSecondaryMetric(ALLOCATION_METRIC, allocations, "B/op");
+        }
+        return result;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedByCurrentThread() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // Throughput of one iteration, and the bytes the benchmark threads allocated per operation
+    private static final class Iteration {
+        private final double operationsPerSecond;
+        private final double bytesPerOperation;
+
+        private Iteration(double operationsPerSecond, double bytesPerOperation) {
+            this.operationsPerSecond = operationsPerSecond;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+    }
+
+    // Runs one iteration on freshly built state
+    private Iteration runIteration(PoolBenchmark benchmark, int threads, int poolSize) {
+        int perThread = Math.max(1, operationsPerIteration / threads);
+        PoolBenchmark.BenchmarkOperation operation = benchmark.setUp(poolSize, shards, threads, perThread * threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder allocated = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                long consumed = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                    long allocatedBefore = allocatedByCurrentThread();
+                    for (int i = 0; i < perThread; i++) {
+                        consumed += operation.run(thread, i);
+                    }
+                    allocated.add(allocatedByCurrentThread() - allocatedBefore);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    sink += consumed;
+                    done.countDown();
+                }
+            }, "benchmark-" + thread);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        try {
+            ready.await();
+            long begin = System.nanoTime();
+            start.countDown();
+            done.await();
+            long elapsed = System.nanoTime() - begin;
+            long operations = (long) perThread * threads;
+            return new Iteration((double) operations * 1_000_000_000L / elapsed, (double) allocated.sum() / operations);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Benchmark was interrupted.", e);
+        } finally {
+            operation.close();
+        }
+    }
+
+    private void writeResults(List<BenchmarkResult> results) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+        try (Writer writer = new FileWriter(output)) {
+            gson.toJson(results, writer);
+            System.out.println("Results written to " + output);
+        } catch (IOException e) {
+            System.err.println("Failed to write benchmark results: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+// Measures login throughput through the CredentialStore with many threads logging in at once
+// LOGIN_HASHED turns the session cache off so every login hashes the password on the credential workers.
+// LOGIN_CACHED keeps it on and logs every user in once before measuring, so the logins measured are served from the cache.
+// Each iteration runs for a fixed time rather than a fixed number of logins, as a hashed login takes milliseconds.
+public class LoginBenchmark {
+    private static final String DEFAULT_OUTPUT = "login-results.json";
+    private static final String PASSWORD = "benchmark-password";
+
+    private int[] threadCounts = {1, 8, 64};
+    private int users = 100;
+    private int iterationSeconds = 5;
+    private int warmupIterations = 1;
+    private int measurementIterations = 3;
+    private String output = DEFAULT_OUTPUT;
+    private static volatile long sink; // Keeps the JIT from dropping the logins
+
+    public static void main(String[] args) {
+        LoginBenchmark benchmark = new LoginBenchmark();
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoginBenchmark [--threads 1,8,64] [--users 100] [--seconds 5] [--warmup 1]"
+                    + " [--iterations 3] [--out " + DEFAULT_OUTPUT + "]");
+            System.exit(1);
+        }
+        benchmark.runAll();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--threads":
+                    String[] parts = value.split(",");
+                    threadCounts = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        threadCounts[j] = Integer.parseInt(parts[j].trim());
+                        if (threadCounts[j] <= 0) {
+                            throw new IllegalArgumentException("Expected positive numbers but got " + value);
+                        }
+                    }
+                    break;
+                case "--users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    iterationSeconds = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    measurementIterations = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (users <= 0 || iterationSeconds <= 0 || measurementIterations <= 0 || warmupIterations < 0) {
+            throw new IllegalArgumentException("Invalid benchmark settings.");
+        }
+    }
+
+    private void runAll() {
+        // Every user gets the same hash, made once, so setting up thousands of users does not take minutes
+        PasswordHash passwordHash = PasswordHash.create(PASSWORD, Constants.PASSWORD_HASH_ITERATIONS);
+        UserRegistry<Customer> registry = new UserRegistry<>();
+        for (int id = 1; id <= users; id++) {
+            Customer customer = new Customer(id, "Benchmark Customer " + id, email(id), "0000000000", 1, 1000, 0, null);
+            customer.setPasswordHash(passwordHash);
+            registry.register(customer);
+        }
+        int hashers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            for (boolean cached : new boolean[] {false, true}) {
+                CredentialStore store = new CredentialStore(Constants.PASSWORD_HASH_ITERATIONS, hashers,
+                        Constants.CREDENTIAL_QUEUE_CAPACITY, cached ? Constants.SESSION_CACHE_TTL : 0,
+                        Constants.SESSION_CACHE_CAPACITY);
+                try {
+                    BenchmarkResult result = measure(cached ? "LOGIN_CACHED" : "LOGIN_HASHED", store, registry, threads)
+                            .withParam("users", users).withParam("hashThreads", hashers)
+                            .withParam("iterations", Constants.PASSWORD_HASH_ITERATIONS);
+                    results.add(result);
+                    System.out.printf("%-14s threads=%-3d %,14.1f +- %,.1f logins/s, rejected %s%n", result.getBenchmark(),
+                            threads, result.getScore(), result.getScoreError(), result.getParam("rejected"));
+                } finally {
+                    store.close();
+                }
+            }
+        }
+        writeResults(results);
+    }
+
+    private BenchmarkResult measure(String name, CredentialStore store, UserRegistry<Customer> registry, int threads) {
+        if (name.equals("LOGIN_CACHED")) {
+            logEveryoneIn(store, registry);
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(store, registry, threads);
+        }
+        long rejectedBefore = store.getRejected();
+        List<Double> scores = new ArrayList<>(measurementIterations);
+        for (int i = 0; i < measurementIterations; i++) {
+            scores.add(runIteration(store, registry, threads));
+        }
+        return new BenchmarkResult(name, "thrpt", "ops/s", threads, warmupIterations, scores)
+                .withParam("rejected", store.getRejected() - rejectedBefore);
+    }
+
+    // Logs every user in once, no more at a time than the credential workers queue
+    private void logEveryoneIn(CredentialStore store, UserRegistry<Customer> registry) {
+        List<CompletableFuture<Customer>> pending = new ArrayList<>(Constants.CREDENTIAL_QUEUE_CAPACITY);
+        for (int user = 1; user <= users; user++) {
+            pending.add(store.login(registry, email(user), PASSWORD));
+            if (pending.size() == Constants.CREDENTIAL_QUEUE_CAPACITY || user == users) {
+                for (CompletableFuture<Customer> login : pending) {
+                    login.join();
+                }
+                pending.clear();
+            }
+        }
+    }
+
+    // Every thread logs in one user after another until the time is up, returns successful logins per second
+    // A login turned away because the credential workers are full is counted as rejected, not as a login
+    private double runIteration(CredentialStore store, UserRegistry<Customer> registry, int threads) {
+        long deadline = System.nanoTime() + iterationSeconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder logins = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    int user = thread;
+                    while (System.nanoTime() < deadline) {
+                        user = user % users + 1;
+                        try {
+                            Customer customer = store.login(registry, email(user), PASSWORD).join();
+                            if (customer == null) {
+                                throw new IllegalStateException("Login failed for " + email(user));
+                            }
+                            sink += customer.getId();
+                            logins.increment();
+                        } catch (CompletionException e) {
+                            Thread.onSpinWait(); // Rejected, the workers are full
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "login-benchmark-" + thread);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return logins.sum() / (double) iterationSeconds;
+    }
+
+    private static String email(int id) {
+        return "customer" + id + "@login.test";
+    }
+
+    private void writeResults(List<BenchmarkResult> results) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+        try (Writer writer = new FileWriter(output)) {
+            gson.toJson(results, writer);
+            System.out.println("Results written to " + output);
+        } catch (IOException e) {
+            System.err.println("Failed to write benchmark results: " + e.getMessage());
+        }
+    }
+}
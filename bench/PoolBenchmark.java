@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.PrimitiveIterator;
+
+// Operations measured by BenchmarkRunner
+// Each benchmark builds fresh state for every iteration and returns the operation the benchmark threads repeat
+public enum PoolBenchmark {
+    // Releases one ticket at a time into a pool already holding poolSize tickets
+    // The pool has room for every release of the iteration, so none is turned away and nothing is drained while timing
+    ADD_TICKETS(true) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            TicketPool pool = TicketPool.createStandalone(poolSize + operations, shards);
+            pool.addTickets(poolSize, 0);
+            return (thread, invocation) -> pool.addTickets(1, thread + 1).getAdded();
+        }
+    },
+    // Sells one ticket at a time from a pool stocked with one ticket per sale on top of poolSize
+    // The pool never runs dry while timing, so no refill is measured with the sales
+    REMOVE_TICKET(true) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            TicketPool pool = TicketPool.createStandalone(poolSize + operations, shards);
+            pool.addTickets(poolSize + operations, 0);
+            return (thread, invocation) -> pool.removeTicket(thread + 1).getTicket().getId();
+        }
+    },
+    // Refunds the tickets each customer owns one at a time, then buys the same number back in one order
+    REFUND_TICKET(true) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            TicketPool pool = TicketPool.createStandalone(poolSize, shards);
+            pool.addTickets(poolSize, 0);
+            int share = Math.max(1, poolSize / threads);
+            int[][] owned = new int[threads][]; // Each row is only touched by its own thread
+            int[] next = new int[threads];
+            for (int thread = 0; thread < threads; thread++) {
+                owned[thread] = pool.removeTickets(thread + 1, share, BulkPurchaseMode.BEST_EFFORT).getTicketIds();
+            }
+            return (thread, invocation) -> {
+                while (next[thread] == owned[thread].length) {
+                    // Other customers may have bought the refunded tickets, take whatever is back on sale
+                    owned[thread] = pool.removeTickets(thread + 1, share, BulkPurchaseMode.BEST_EFFORT).getTicketIds();
+                    next[thread] = 0;
+                    if (owned[thread].length == 0) {
+                        Thread.onSpinWait();
+                    }
+                }
+                int ticketId = owned[thread][next[thread]++];
+                return pool.refundTicket(thread + 1, ticketId) ? ticketId : 0;
+            };
+        }
+    },
+    // Looks up the tickets of one of many customers, each owning TICKETS_PER_CUSTOMER tickets
+    GET_TICKETS_BY_CUSTOMER(true) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            TicketPool pool = TicketPool.createStandalone(poolSize, shards);
+            pool.addTickets(poolSize, 0);
+            int customers = Math.max(1, poolSize / TICKETS_PER_CUSTOMER);
+            for (int customer = 1; customer <= customers; customer++) {
+                pool.removeTickets(customer, TICKETS_PER_CUSTOMER, BulkPurchaseMode.BEST_EFFORT);
+            }
+            return (thread, invocation) -> {
+                // Spread the lookups over every customer without sharing a random number generator
+                int customer = 1 + (int) ((invocation * 0x9E3779B1L + thread) & 0x7FFFFFFF) % customers;
+                return pool.getTicketsByCustomer(customer).size();
+            };
+        }
+    },
+    // Same lookups as GET_TICKETS_BY_CUSTOMER, walking the primitive ticket ID iterator instead of a list of tickets
+    GET_TICKET_IDS_BY_CUSTOMER(true) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            TicketPool pool = TicketPool.createStandalone(poolSize, shards);
+            pool.addTickets(poolSize, 0);
+            int customers = Math.max(1, poolSize / TICKETS_PER_CUSTOMER);
+            for (int customer = 1; customer <= customers; customer++) {
+                pool.removeTickets(customer, TICKETS_PER_CUSTOMER, BulkPurchaseMode.BEST_EFFORT);
+            }
+            return (thread, invocation) -> {
+                int customer = 1 + (int) ((invocation * 0x9E3779B1L + thread) & 0x7FFFFFFF) % customers;
+                int sum = 0;
+                for (PrimitiveIterator.OfInt ids = pool.getTicketIdsByCustomer(customer); ids.hasNext(); ) {
+                    sum += ids.nextInt();
+                }
+                return sum;
+            };
+        }
+    },
+    // Sells one ticket at a time with every sale waiting for its journal record to be forced to disk
+    // Bound by fsync latency, so it only runs when asked for by name
+    JOURNALED_REMOVE_TICKET_COMMIT(false, false) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            return journaledSales(shards, operations, JournalSyncMode.COMMIT);
+        }
+    },
+    // Sells one ticket at a time with the journal forced to disk in the background
+    JOURNALED_REMOVE_TICKET_INTERVAL(false, false) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            return journaledSales(shards, operations, JournalSyncMode.INTERVAL);
+        }
+    },
+    // Adds a typed activity log entry, the pool size does not apply
+    ADD_LOG(false) {
+        @Override
+        BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations) {
+            return (thread, invocation) -> {
+                Utils.addLog(LogEventType.TICKET_SOLD, thread + 1, invocation, 0);
+                return invocation;
+            };
+        }
+    };
+
+    private static final int TICKETS_PER_CUSTOMER = 10;
+    private static final int JOURNALED_POOL_SIZE = 100_000;
+
+    private final boolean usesPoolSize;
+    private final boolean runByDefault;
+
+    PoolBenchmark(boolean usesPoolSize) {
+        this(usesPoolSize, true);
+    }
+
+    PoolBenchmark(boolean usesPoolSize, boolean runByDefault) {
+        this.usesPoolSize = usesPoolSize;
+        this.runByDefault = runByDefault;
+    }
+
+    public boolean usesPoolSize() {
+        return usesPoolSize;
+    }
+
+    // Benchmarks that are not run by default have to be picked with --bench
+    public boolean isRunByDefault() {
+        return runByDefault;
+    }
+
+    // Sells from a pool that journals into a scratch directory under the working directory,
+    // so the journal is on the same disk the ticketing system would use rather than in a RAM-backed temp directory
+    // The pool is stocked with a ticket for every sale before the journal is switched on, so no refill is measured
+    private static BenchmarkOperation journaledSales(int shards, int operations, JournalSyncMode syncMode) {
+        TicketPool pool = TicketPool.createStandalone(JOURNALED_POOL_SIZE + operations, shards);
+        pool.addTickets(JOURNALED_POOL_SIZE + operations, 0);
+        Path directory;
+        TicketJournal journal;
+        try {
+            directory = Files.createTempDirectory(Paths.get("."), "benchmark-journal-");
+            journal = new TicketJournal(directory, 0, syncMode, Constants.DEFAULT_JOURNAL_SYNC_INTERVAL,
+                    Constants.DEFAULT_JOURNAL_SYNC_BATCH);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the benchmark journal", e);
+        }
+        pool.enableJournal(journal);
+        return new BenchmarkOperation() {
+            @Override
+            public int run(int thread, int invocation) {
+                return pool.removeTicket(thread + 1).getTicket().getId();
+            }
+
+            @Override
+            public void close() {
+                journal.close();
+                try {
+                    for (Path segment : TicketJournal.listSegments(directory)) {
+                        Files.delete(segment);
+                    }
+                    Files.delete(directory);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete the benchmark journal: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    // Builds the state for one iteration, operations is how many calls the benchmark threads will make in total
+    abstract BenchmarkOperation setUp(int poolSize, int shards, int threads, int operations);
+
+    // One measured call, the result is consumed by the runner so the call cannot be optimised away
+    interface BenchmarkOperation {
+        int run(int thread, int invocation);
+
+        // Releases anything the iteration opened, called once every thread has finished
+        default void close() {
+        }
+    }
+}
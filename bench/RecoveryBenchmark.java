@@ -0,0 +1,207 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+// Measures how long the ticket pool takes to recover from its data directory
+// The same history of releases, sales and refunds is recovered from the journal alone, and from a snapshot taken
+// near the end of it plus the journal tail, so the two times show what periodic snapshots save at startup.
+// A third run keeps the tickets in a mapped ticket table checkpointed at the same point. Each result also reports
+// the heap the recovered pool occupies, which shows what moving the tickets off the heap saves.
+public class RecoveryBenchmark {
+    private static final String DEFAULT_OUTPUT = "recovery-results.json";
+    private static final int RELEASE_SIZE = 100; // Tickets per vendor release while building the history
+    private static final int VENDORS = 50;
+    private static final int CUSTOMERS = 1000;
+
+    private int tickets = 1_000_000;
+    private double tailFraction = 0.1; // Share of the history written after the snapshot
+    private int warmupIterations = 2;
+    private int measurementIterations = 5;
+    private String output = DEFAULT_OUTPUT;
+
+    public static void main(String[] args) {
+        RecoveryBenchmark benchmark = new RecoveryBenchmark();
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: RecoveryBenchmark [--tickets 1000000] [--tail 0.1] [--warmup 2] [--iterations 5] [--out "
+                    + DEFAULT_OUTPUT + "]");
+            System.exit(1);
+        }
+        try {
+            benchmark.runAll();
+        } catch (IOException e) {
+            System.err.println("Recovery benchmark failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--tickets":
+                    tickets = Integer.parseInt(value);
+                    break;
+                case "--tail":
+                    tailFraction = Double.parseDouble(value);
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    measurementIterations = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (tickets <= 0 || measurementIterations <= 0 || warmupIterations < 0 || tailFraction < 0 || tailFraction > 1) {
+            throw new IllegalArgumentException("Invalid benchmark settings.");
+        }
+    }
+
+    private void runAll() throws IOException {
+        List<BenchmarkResult> results = new ArrayList<>();
+        Path journalOnly = Files.createTempDirectory(Paths.get("."), "benchmark-recovery-");
+        Path withSnapshot = Files.createTempDirectory(Paths.get("."), "benchmark-recovery-");
+        Path withTable = Files.createTempDirectory(Paths.get("."), "benchmark-recovery-");
+        try {
+            long records = writeHistory(journalOnly, false, false);
+            writeHistory(withSnapshot, true, false);
+            writeHistory(withTable, true, true);
+            results.add(measure("RECOVER_JOURNAL_ONLY", journalOnly, false).withParam("journalRecords", records));
+            results.add(measure("RECOVER_SNAPSHOT_AND_TAIL", withSnapshot, false).withParam("journalRecords", records)
+                    .withParam("tailFraction", tailFraction));
+            results.add(measure("RECOVER_MAPPED_TABLE_AND_TAIL", withTable, true).withParam("journalRecords", records)
+                    .withParam("tailFraction", tailFraction));
+        } finally {
+            deleteDirectory(journalOnly);
+            deleteDirectory(withSnapshot);
+            deleteDirectory(withTable);
+        }
+        for (BenchmarkResult result : results) {
+            System.out.printf("%-30s %,12.1f +- %,.1f %s, heap after recovery %s MB%n", result.getBenchmark(),
+                    result.getScore(), result.getScoreError(), result.getScoreUnit(), result.getParam("heapMB"));
+        }
+        writeResults(results);
+    }
+
+    // Releases the tickets in vendor batches, sells every one of them and refunds every tenth sale
+    // With takeSnapshot set, a snapshot is taken once all but tailFraction of the sales have been journaled
+    // Returns the number of journal records written
+    private long writeHistory(Path directory, boolean takeSnapshot, boolean mapped) throws IOException {
+        MappedTicketTable table = mapped ? MappedTicketTable.open(directory.resolve(Constants.TICKET_TABLE_FILE)) : null;
+        TicketPool pool = TicketPool.createStandalone(tickets, 1, table);
+        TicketJournal journal = new TicketJournal(directory, 0, JournalSyncMode.INTERVAL,
+                Constants.DEFAULT_JOURNAL_SYNC_INTERVAL, Constants.DEFAULT_JOURNAL_SYNC_BATCH);
+        pool.enableJournal(journal);
+        for (int released = 0; released < tickets; released += RELEASE_SIZE) {
+            pool.addTickets(Math.min(RELEASE_SIZE, tickets - released), 1 + (released / RELEASE_SIZE) % VENDORS);
+        }
+        int snapshotAt = (int) (tickets * (1 - tailFraction));
+        for (int sale = 0; sale < tickets; sale++) {
+            if (takeSnapshot && sale == snapshotAt) {
+                long lsn = journal.rotate();
+                if (table != null) {
+                    table.checkpoint(lsn);
+                } else {
+                    pool.captureSnapshot(lsn).write(directory);
+                }
+                journal.deleteSegmentsBefore(lsn);
+            }
+            int customerId = 1 + sale % CUSTOMERS;
+            PurchaseResult result = pool.removeTicket(customerId);
+            if (result.isSuccess() && sale % 10 == 0) {
+                pool.refundTicket(customerId, result.getTicket().getId());
+            }
+        }
+        long records = journal.getNextLsn();
+        journal.close();
+        if (table != null) {
+            table.close();
+        }
+        return records;
+    }
+
+    private BenchmarkResult measure(String name, Path directory, boolean mapped) throws IOException {
+        for (int i = 0; i < warmupIterations; i++) {
+            recover(directory, mapped, null);
+        }
+        List<Double> times = new ArrayList<>(measurementIterations);
+        long[] heapBytes = new long[1];
+        for (int i = 0; i < measurementIterations; i++) {
+            times.add(recover(directory, mapped, i == measurementIterations - 1 ? heapBytes : null));
+        }
+        return new BenchmarkResult(name, "avgt", "ms/op", 1, warmupIterations, times).withParam("tickets", tickets)
+                .withParam("heapMB", heapBytes[0] / (1024 * 1024));
+    }
+
+    // Recovers a fresh pool the way PoolPersistence.open does, without opening a journal that would change the directory
+    // Returns the time taken in milliseconds, and the heap in use with the recovered pool if heapBytes is given
+    private double recover(Path directory, boolean mapped, long[] heapBytes) throws IOException {
+        long heapBefore = heapBytes == null ? 0 : usedHeap();
+        MappedTicketTable table = mapped ? MappedTicketTable.open(directory.resolve(Constants.TICKET_TABLE_FILE)) : null;
+        TicketPool pool = TicketPool.createStandalone(tickets, 1, table);
+        long started = System.nanoTime();
+        PoolPersistence.recover(directory, pool);
+        double elapsed = (System.nanoTime() - started) / 1_000_000.0;
+        if (pool.getTotalTicketsReleased() != tickets) {
+            throw new IllegalStateException("Recovered " + pool.getTotalTicketsReleased() + " tickets, expected " + tickets);
+        }
+        if (heapBytes != null) {
+            heapBytes[0] = usedHeap() - heapBefore;
+            if (pool.getAvailableTickets() < 0) {
+                throw new IllegalStateException("Unreachable, keeps the pool alive until the heap is measured");
+            }
+        }
+        if (table != null) {
+            table.close();
+        }
+        return elapsed;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private void writeResults(List<BenchmarkResult> results) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+        try (Writer writer = new FileWriter(output)) {
+            gson.toJson(results, writer);
+            System.out.println("Results written to " + output);
+        } catch (IOException e) {
+            System.err.println("Failed to write benchmark results: " + e.getMessage());
+        }
+    }
+}
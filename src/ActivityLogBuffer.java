@@ -0,0 +1,73 @@
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed-capacity in-memory activity log, the oldest entries are overwritten once it is full
+// Every entry gets a sequence number so readers can ask for the entries added since the last one they saw
+// Uses a ReentrantLock rather than a monitor so virtual threads waiting for it do not pin their carrier
+public class ActivityLogBuffer {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LogEvent[] entries;
+    private long nextSequence = 0; // Sequence number the next appended entry will get
+
+    public ActivityLogBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Activity log capacity must be positive.");
+        }
+        this.entries = new LogEvent[capacity];
+    }
+
+    // Adds an entry and returns its sequence number
+    public long append(LogEvent entry) {
+        lock.lock();
+        try {
+            long sequence = nextSequence;
+            entries[(int) (sequence % entries.length)] = entry;
+            nextSequence = sequence + 1;
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copies the retained entries with sequence >= fromSequence into out
+    // Returns the sequence to pass in on the next call, entries that were already overwritten are skipped
+    public long readSince(long fromSequence, List<LogEvent> out) {
+        lock.lock();
+        try {
+            long start = Math.max(fromSequence, getOldestSequence());
+            for (long sequence = start; sequence < nextSequence; sequence++) {
+                out.add(entries[(int) (sequence % entries.length)]);
+            }
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sequence number of the oldest entry still held in the buffer
+    public long getOldestSequence() {
+        lock.lock();
+        try {
+            return Math.max(0, nextSequence - entries.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getNextSequence() {
+        lock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return getNextSequence() == 0;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+}
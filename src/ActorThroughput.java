@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts the tickets each vendor or customer has moved and their rate since their first recorded ticket
+public class ActorThroughput {
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+
+    public void record(int actorId, int tickets) {
+        counters.computeIfAbsent(actorId, id -> new Counter(System.nanoTime())).tickets.add(tickets);
+    }
+
+    public int getActorCount() {
+        return counters.size();
+    }
+
+    // The actors that moved the most tickets, busiest first
+    public List<Rate> busiest(int limit) {
+        long now = System.nanoTime();
+        List<Rate> snapshot = new ArrayList<>(counters.size());
+        for (Map.Entry<Integer, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            double seconds = Math.max(1, now - counter.firstNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            long tickets = counter.tickets.sum();
+            snapshot.add(new Rate(entry.getKey(), tickets, tickets / seconds));
+        }
+        snapshot.sort(Comparator.comparingLong(Rate::getTickets).reversed());
+        return snapshot.size() > limit ? new ArrayList<>(snapshot.subList(0, limit)) : snapshot;
+    }
+
+    private static final class Counter {
+        private final long firstNanos;
+        private final LongAdder tickets = new LongAdder();
+
+        private Counter(long firstNanos) {
+            this.firstNanos = firstNanos;
+        }
+    }
+
+    // Tickets an actor has moved so far and their average rate
+    public static final class Rate {
+        private final int actorId;
+        private final long tickets;
+        private final double ticketsPerSecond;
+
+        private Rate(int actorId, long tickets, double ticketsPerSecond) {
+            this.actorId = actorId;
+            this.tickets = tickets;
+            this.ticketsPerSecond = ticketsPerSecond;
+        }
+
+        public int getActorId() {
+            return actorId;
+        }
+
+        public long getTickets() {
+            return tickets;
+        }
+
+        public double getTicketsPerSecond() {
+            return ticketsPerSecond;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Appends activity log entries to the log file from a single background thread
+// Producers only enqueue events into a bounded ring buffer, the writer renders and drains them in batches over one open FileChannel
+public class AsyncLogWriter {
+    private final BlockingQueue<LogEvent> queue;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    private final LogOverflowPolicy overflowPolicy;
+    private final AtomicLong droppedEntries = new AtomicLong(0);
+    private long reportedDrops = 0; // Only touched by the writer thread
+    private final FileChannel channel;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public AsyncLogWriter(String logFile, int queueCapacity, long flushIntervalMillis, int batchSize,
+                          LogOverflowPolicy overflowPolicy) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.channel = FileChannel.open(Paths.get(logFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writerThread = new Thread(this::drainLoop, "activity-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Queues a log entry, returns false if the entry was discarded
+    public boolean append(LogEvent entry) {
+        if (!running) {
+            return false;
+        }
+        if (overflowPolicy == LogOverflowPolicy.BLOCK) {
+            try {
+                queue.put(entry);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (queue.offer(entry)) {
+            return true;
+        }
+        if (overflowPolicy == LogOverflowPolicy.COUNT) {
+            droppedEntries.incrementAndGet();
+        }
+        return false;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedEntries() {
+        return droppedEntries.get();
+    }
+
+    // Stops accepting entries, writes everything still queued and closes the file
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<LogEvent> batch = new ArrayList<>(batchSize);
+        StringBuilder text = new StringBuilder(batchSize * 64);
+        try {
+            while (running || !queue.isEmpty()) {
+                collectBatch(batch);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch, text);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close log file: " + e.getMessage());
+            }
+        }
+    }
+
+    // Waits for the first entry, then keeps collecting until the batch is full or the flush interval has passed
+    private void collectBatch(List<LogEvent> batch) throws InterruptedException {
+        LogEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize && running) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            LogEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        queue.drainTo(batch, batchSize - batch.size());
+    }
+
+    private void writeBatch(List<LogEvent> batch, StringBuilder text) {
+        long totalDropped = droppedEntries.get();
+        long dropped = totalDropped - reportedDrops;
+        reportedDrops = totalDropped;
+        text.setLength(0);
+        for (LogEvent entry : batch) {
+            entry.renderTo(text);
+            text.append(System.lineSeparator());
+        }
+        if (dropped > 0) {
+            text.append(dropped).append(" log entries were dropped because the log queue was full.")
+                    .append(System.lineSeparator());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write to log file: " + e.getMessage());
+        }
+    }
+}
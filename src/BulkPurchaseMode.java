@@ -0,0 +1,5 @@
+// How a bulk purchase behaves when fewer tickets are available than requested
+public enum BulkPurchaseMode {
+    ALL_OR_NOTHING, // Buy every requested ticket or none of them
+    BEST_EFFORT // Buy as many of the requested tickets as are available
+}
@@ -0,0 +1,53 @@
+// Outcome of TicketPool.removeTickets, holds the IDs of the tickets sold in one call
+public final class BulkPurchaseResult {
+    private static final int[] NO_TICKETS = new int[0];
+
+    private final int requested;
+    private final int[] ticketIds;
+    private final String message;
+
+    private BulkPurchaseResult(int requested, int[] ticketIds, String message) {
+        this.requested = requested;
+        this.ticketIds = ticketIds;
+        this.message = message;
+    }
+
+    static BulkPurchaseResult sold(int requested, int[] ticketIds) {
+        return new BulkPurchaseResult(requested, ticketIds, null);
+    }
+
+    static BulkPurchaseResult failed(int requested, String message) {
+        return new BulkPurchaseResult(requested, NO_TICKETS, message);
+    }
+
+    // True if at least one ticket was sold
+    public boolean isSuccess() {
+        return ticketIds.length > 0;
+    }
+
+    public boolean isComplete() {
+        return ticketIds.length == requested;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public int getTicketCount() {
+        return ticketIds.length;
+    }
+
+    public int getTicketId(int index) {
+        return ticketIds[index];
+    }
+
+    // Returns a copy so the result stays immutable
+    public int[] getTicketIds() {
+        return ticketIds.clone();
+    }
+
+    // Reason for the failure, null when tickets were sold
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A one-shot registration for room in a full ticket pool, see TicketPool.awaitCapacity
+// Runs its callback at most once, and never after it has been cancelled
+public class CapacityWaiter {
+    private final Runnable onCapacity;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    CapacityWaiter(Runnable onCapacity) {
+        this.onCapacity = onCapacity;
+    }
+
+    // Returns false if the callback already ran or the waiter was cancelled before
+    boolean fire() {
+        if (done.compareAndSet(false, true)) {
+            onCapacity.run();
+            return true;
+        }
+        return false;
+    }
+
+    // Stops the callback from running, returns false if it already ran
+    public boolean cancel() {
+        return done.compareAndSet(false, true);
+    }
+}
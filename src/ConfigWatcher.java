@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Objects;
+
+import com.google.gson.JsonParseException;
+
+// Watches the configuration file and applies changed settings to the running system without a restart
+// A changed file is validated as a whole and nothing is applied if it is invalid. Rates, the pool capacity, the total
+// ticket limit, the price and timeouts are then applied together under one lock, so two reloads never interleave.
+// Settings that are only read at startup, like the shard count or ticket storage, are logged and wait for a restart.
+public class ConfigWatcher {
+    private static final long SETTLE_MILLIS = 100; // Editors and saveConfiguration write the file in more than one step
+
+    private final Configuration config;
+    private final Path file;
+    private final TicketPool ticketPool;
+    private final VendorScheduler vendorScheduler;
+    private final UserRegistry<Vendor> vendors;
+    private final UserRegistry<Customer> customers;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public ConfigWatcher(Configuration config, Path file, TicketPool ticketPool, VendorScheduler vendorScheduler,
+                         UserRegistry<Vendor> vendors, UserRegistry<Customer> customers) {
+        this.config = config;
+        this.file = file;
+        this.ticketPool = ticketPool;
+        this.vendorScheduler = vendorScheduler;
+        this.vendors = vendors;
+        this.customers = customers;
+    }
+
+    // Starts watching the folder that holds the file, a file replaced by a rename is picked up as well
+    public void start() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watch, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (!key.reset()) {
+                    return; // The folder is gone
+                }
+                if (changed) {
+                    // Let the writer finish, then read the file once for every event that came in meanwhile
+                    Thread.sleep(SETTLE_MILLIS);
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void reload() {
+        Configuration updated;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            updated = Utils.GSON.fromJson(reader, Configuration.class);
+        } catch (IOException | JsonParseException e) {
+            reject(file.getFileName() + " could not be read: " + e.getMessage());
+            return;
+        }
+        apply(updated);
+    }
+
+    // Applies the settings that differ from the running configuration, returns false and changes nothing if any is invalid
+    public synchronized boolean apply(Configuration updated) {
+        if (updated == null || !updated.isValid()) {
+            reject("the ticket limit, capacity, rates and price must be positive and the ticket limit at least the capacity");
+            return false;
+        }
+        updated.applyOptionalDefaults();
+        Configuration previous = config.copy();
+        config.copyLiveSettings(updated);
+
+        if (updated.getMaxTicketCapacity() != previous.getMaxTicketCapacity()) {
+            ticketPool.setMaxCapacity(updated.getMaxTicketCapacity());
+            applied(String.format("maxTicketCapacity %d -> %d", previous.getMaxTicketCapacity(), updated.getMaxTicketCapacity()));
+        }
+        if (updated.getTicketReleaseRate() != previous.getTicketReleaseRate()) {
+            int rescheduled = 0;
+            for (Vendor vendor : vendors.getLoaded()) {
+                vendor.setReleaseInterval(updated.getTicketReleaseRate());
+                if (vendorScheduler.isRunning(vendor)) {
+                    vendorScheduler.reschedule(vendor);
+                    rescheduled++;
+                }
+            }
+            applied(String.format("ticketReleaseRate %d -> %d ms, %d running vendors rescheduled",
+                    previous.getTicketReleaseRate(), updated.getTicketReleaseRate(), rescheduled));
+        }
+        if (updated.getCustomerRetrievalRate() != previous.getCustomerRetrievalRate()) {
+            int changed = 0;
+            for (Customer customer : customers.getLoaded()) {
+                customer.setRetrievalInterval(updated.getCustomerRetrievalRate());
+                changed++;
+            }
+            applied(String.format("customerRetrievalRate %d -> %d ms, %d customers updated",
+                    previous.getCustomerRetrievalRate(), updated.getCustomerRetrievalRate(), changed));
+        }
+        if (updated.getTotalTickets() != previous.getTotalTickets()) {
+            applied(String.format("totalTickets %d -> %d", previous.getTotalTickets(), updated.getTotalTickets()));
+        }
+        if (updated.getTicketPrice() != previous.getTicketPrice()) {
+            applied(String.format("ticketPrice %.2f -> %.2f", previous.getTicketPrice(), updated.getTicketPrice()));
+        }
+        if (updated.getWaitTimeout() != previous.getWaitTimeout()) {
+            applied(String.format("waitTimeout %d -> %d ms for vendors and customers loaded from now on",
+                    previous.getWaitTimeout(), updated.getWaitTimeout()));
+        }
+        if (updated.getHoldTtl() != previous.getHoldTtl()) {
+            applied(String.format("holdTtl %d -> %d ms for new holds", previous.getHoldTtl(), updated.getHoldTtl()));
+        }
+
+        needsRestart("poolShards", previous.getPoolShards(), updated.getPoolShards());
+        needsRestart("executionMode", previous.getExecutionMode(), updated.getExecutionMode());
+        needsRestart("ticketStorage", previous.getTicketStorage(), updated.getTicketStorage());
+        needsRestart("journalSyncMode", previous.getJournalSyncMode(), updated.getJournalSyncMode());
+        needsRestart("journalSyncInterval", previous.getJournalSyncInterval(), updated.getJournalSyncInterval());
+        needsRestart("journalSyncBatch", previous.getJournalSyncBatch(), updated.getJournalSyncBatch());
+        needsRestart("snapshotInterval", previous.getSnapshotInterval(), updated.getSnapshotInterval());
+        needsRestart("logFlushInterval", previous.getLogFlushInterval(), updated.getLogFlushInterval());
+        needsRestart("logBatchSize", previous.getLogBatchSize(), updated.getLogBatchSize());
+        needsRestart("logOverflowPolicy", previous.getLogOverflowPolicy(), updated.getLogOverflowPolicy());
+        needsRestart("metricsDumpInterval", previous.getMetricsDumpInterval(), updated.getMetricsDumpInterval());
+        return true;
+    }
+
+    private static void needsRestart(String setting, Object running, Object updated) {
+        if (!Objects.equals(running, updated)) {
+            reject(setting + " " + running + " -> " + updated + " takes effect after a restart");
+        }
+    }
+
+    private static void applied(String change) {
+        Utils.addLog(new LogEvent(LogEventType.CONFIG_CHANGED, LogEvent.NONE, LogEvent.NONE, LogEvent.NONE, change));
+    }
+
+    private static void reject(String reason) {
+        Utils.addLog(new LogEvent(LogEventType.CONFIG_REJECTED, LogEvent.NONE, LogEvent.NONE, LogEvent.NONE, reason));
+    }
+
+    // Stops watching, changes to the file after this are not applied
+    public void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the configuration watcher: " + e.getMessage());
+        }
+        try {
+            watcher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
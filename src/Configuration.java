@@ -4,18 +4,30 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Scanner;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 
 public class Configuration {
     private static final String CONFIG_FILE = Constants.CONFIG_FILE;
 
-    private int totalTickets;
-    private int ticketReleaseRate;
-    private int customerRetrievalRate;
-    private int maxTicketCapacity;
-    private double ticketPrice;
+    // Settings that ConfigWatcher can change while the system runs are volatile
+    private volatile int totalTickets;
+    private volatile int ticketReleaseRate;
+    private volatile int customerRetrievalRate;
+    private volatile int maxTicketCapacity;
+    private volatile double ticketPrice;
+    private int logFlushInterval; // in milliseconds
+    private int logBatchSize;
+    private LogOverflowPolicy logOverflowPolicy;
+    private int poolShards;
+    private ExecutionMode executionMode;
+    private volatile int waitTimeout; // in milliseconds
+    private volatile int holdTtl; // in milliseconds
+    private int metricsDumpInterval; // in milliseconds
+    private JournalSyncMode journalSyncMode;
+    private int journalSyncInterval; // in milliseconds
+    private int journalSyncBatch;
+    private int snapshotInterval; // in milliseconds
+    private TicketStorage ticketStorage;
 
     // Getters
     public int getTotalTickets() { return totalTickets; }
@@ -23,20 +35,46 @@ public class Configuration {
     public int getCustomerRetrievalRate() { return customerRetrievalRate; }
     public int getMaxTicketCapacity() { return maxTicketCapacity; }
     public double getTicketPrice() { return ticketPrice; }
+    public int getLogFlushInterval() { return logFlushInterval; }
+    public int getLogBatchSize() { return logBatchSize; }
+    public LogOverflowPolicy getLogOverflowPolicy() { return logOverflowPolicy; }
+    public int getPoolShards() { return poolShards; }
+    public ExecutionMode getExecutionMode() { return executionMode; }
+    public int getWaitTimeout() { return waitTimeout; }
+    public int getHoldTtl() { return holdTtl; }
+    public int getMetricsDumpInterval() { return metricsDumpInterval; }
+    public JournalSyncMode getJournalSyncMode() { return journalSyncMode; }
+    public int getJournalSyncInterval() { return journalSyncInterval; }
+    public int getJournalSyncBatch() { return journalSyncBatch; }
+    public int getSnapshotInterval() { return snapshotInterval; }
+    public TicketStorage getTicketStorage() { return ticketStorage; }
 
     // Loads configuration from a JSON file if it exists else prompts the user for input and saves it
     public void loadConfiguration() {
-        Gson gson = new Gson();
         File file = new File(CONFIG_FILE);
         if (file.exists()) {
             try (FileReader reader = new FileReader(file)) {
-                Configuration loadedConfig = gson.fromJson(reader, Configuration.class);
+                Configuration loadedConfig = Utils.GSON.fromJson(reader, Configuration.class);
                 if (loadedConfig != null && loadedConfig.isValid()) {
                     this.totalTickets = loadedConfig.totalTickets;
                     this.ticketReleaseRate = loadedConfig.ticketReleaseRate;
                     this.customerRetrievalRate = loadedConfig.customerRetrievalRate;
                     this.maxTicketCapacity = loadedConfig.maxTicketCapacity;
                     this.ticketPrice = loadedConfig.ticketPrice;
+                    this.logFlushInterval = loadedConfig.logFlushInterval;
+                    this.logBatchSize = loadedConfig.logBatchSize;
+                    this.logOverflowPolicy = loadedConfig.logOverflowPolicy;
+                    this.poolShards = loadedConfig.poolShards;
+                    this.executionMode = loadedConfig.executionMode;
+                    this.waitTimeout = loadedConfig.waitTimeout;
+                    this.holdTtl = loadedConfig.holdTtl;
+                    this.metricsDumpInterval = loadedConfig.metricsDumpInterval;
+                    this.journalSyncMode = loadedConfig.journalSyncMode;
+                    this.journalSyncInterval = loadedConfig.journalSyncInterval;
+                    this.journalSyncBatch = loadedConfig.journalSyncBatch;
+                    this.snapshotInterval = loadedConfig.snapshotInterval;
+                    this.ticketStorage = loadedConfig.ticketStorage;
+                    applyOptionalDefaults();
                     Utils.synchronizedPrintFormat("Configuration loaded from %s", CONFIG_FILE);
                     return;
                 } else {
@@ -52,6 +90,70 @@ public class Configuration {
         saveConfiguration();
     }
 
+    // Reads the configuration file without ever prompting, for tools that run without a console
+    // Fails if the file is missing, cannot be parsed or holds invalid settings
+    public static Configuration readFile(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            throw new IOException(fileName + " not found");
+        }
+        Configuration loadedConfig;
+        try (FileReader reader = new FileReader(file)) {
+            loadedConfig = Utils.GSON.fromJson(reader, Configuration.class);
+        } catch (JsonSyntaxException e) {
+            throw new IOException(fileName + " is not valid JSON: " + e.getMessage(), e);
+        }
+        if (loadedConfig == null || !loadedConfig.isValid()) {
+            throw new IOException(fileName + " is invalid: the ticket limit, capacity, rates and price must be positive "
+                    + "and the ticket limit at least the capacity");
+        }
+        loadedConfig.applyOptionalDefaults();
+        return loadedConfig;
+    }
+
+    // Log writer, pool and threading settings are optional in the file, fall back to defaults when missing or invalid
+    void applyOptionalDefaults() {
+        if (logFlushInterval <= 0) {
+            logFlushInterval = Constants.DEFAULT_LOG_FLUSH_INTERVAL;
+        }
+        if (logBatchSize <= 0) {
+            logBatchSize = Constants.DEFAULT_LOG_BATCH_SIZE;
+        }
+        if (logOverflowPolicy == null) {
+            logOverflowPolicy = Constants.DEFAULT_LOG_OVERFLOW_POLICY;
+        }
+        if (poolShards <= 0) {
+            poolShards = Constants.DEFAULT_POOL_SHARDS;
+        }
+        if (executionMode == null) {
+            executionMode = Constants.DEFAULT_EXECUTION_MODE;
+        }
+        if (waitTimeout <= 0) {
+            waitTimeout = Constants.DEFAULT_WAIT_TIMEOUT;
+        }
+        if (holdTtl <= 0) {
+            holdTtl = Constants.DEFAULT_HOLD_TTL;
+        }
+        if (metricsDumpInterval <= 0) {
+            metricsDumpInterval = Constants.DEFAULT_METRICS_DUMP_INTERVAL;
+        }
+        if (journalSyncMode == null) {
+            journalSyncMode = Constants.DEFAULT_JOURNAL_SYNC_MODE;
+        }
+        if (journalSyncInterval <= 0) {
+            journalSyncInterval = Constants.DEFAULT_JOURNAL_SYNC_INTERVAL;
+        }
+        if (journalSyncBatch <= 0) {
+            journalSyncBatch = Constants.DEFAULT_JOURNAL_SYNC_BATCH;
+        }
+        if (snapshotInterval <= 0) {
+            snapshotInterval = Constants.DEFAULT_SNAPSHOT_INTERVAL;
+        }
+        if (ticketStorage == null) {
+            ticketStorage = Constants.DEFAULT_TICKET_STORAGE;
+        }
+    }
+
     public void promptUserForConfiguration() {
         Scanner scanner = new Scanner(System.in);
         boolean validInput = false;
@@ -88,20 +190,36 @@ public class Configuration {
                 validInput = true; // Exit the loop if all inputs are valid
             }
         }
+        applyOptionalDefaults();
     }
 
     // Saves the current configuration to a JSON file
     public void saveConfiguration() {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
         try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-            gson.toJson(this, writer);
+            Utils.GSON.toJson(this, writer);
             Utils.synchronizedPrintFormat("Configuration saved to %s", CONFIG_FILE);
         } catch (IOException e) {
             Utils.synchronizedPrint("Failed to save configuration: " + e.getMessage());
         }
     }
 
-    private boolean isValid() {
+    // Takes the settings that can change without a restart from another configuration
+    void copyLiveSettings(Configuration other) {
+        this.totalTickets = other.totalTickets;
+        this.ticketReleaseRate = other.ticketReleaseRate;
+        this.customerRetrievalRate = other.customerRetrievalRate;
+        this.maxTicketCapacity = other.maxTicketCapacity;
+        this.ticketPrice = other.ticketPrice;
+        this.waitTimeout = other.waitTimeout;
+        this.holdTtl = other.holdTtl;
+    }
+
+    // A separate copy of every setting, changing it leaves this configuration as it is
+    Configuration copy() {
+        return Utils.GSON.fromJson(Utils.GSON.toJson(this), Configuration.class);
+    }
+
+    boolean isValid() {
         return totalTickets > 0 &&
                 maxTicketCapacity > 0 &&
                 ticketReleaseRate > 0 &&
@@ -4,4 +4,57 @@ public class Constants {
     // File paths
     public static final String CONFIG_FILE = "config.json";
     public static final String LOG_FILE = "activity_logs.txt";
+
+    // Number of ticket pool shards, 1 keeps every available ticket behind a single lock
+    public static final int DEFAULT_POOL_SHARDS = 1;
+
+    // Threads shared by every vendor's scheduled release job
+    public static final int VENDOR_SCHEDULER_THREADS = 2;
+
+    // Customer thread pool size used by the PLATFORM execution mode
+    public static final int CUSTOMER_THREAD_POOL_SIZE = 50;
+    public static final ExecutionMode DEFAULT_EXECUTION_MODE = ExecutionMode.PLATFORM;
+
+    // How long customers wait for tickets in an empty pool and vendors wait for room in a full one
+    public static final int DEFAULT_WAIT_TIMEOUT = 30000; // in milliseconds
+
+    // How long a ticket is held for a customer during checkout before it goes back on sale
+    public static final int DEFAULT_HOLD_TTL = 120000; // in milliseconds
+
+    // Hold expiry timing wheel, one turn of the wheel covers HOLD_WHEEL_TICK * HOLD_WHEEL_SIZE milliseconds
+    public static final int HOLD_WHEEL_TICK = 100; // in milliseconds
+    public static final int HOLD_WHEEL_SIZE = 512;
+
+    // Metrics report file and how often a report is appended to it
+    public static final String METRICS_FILE = "metrics.txt";
+    public static final int DEFAULT_METRICS_DUMP_INTERVAL = 60000; // in milliseconds
+
+    // Ticket pool journal and snapshots
+    public static final String DATA_DIRECTORY = "data";
+    public static final String TICKET_TABLE_FILE = "tickets.tbl"; // In the data directory, used by MAPPED ticket storage
+    public static final TicketStorage DEFAULT_TICKET_STORAGE = TicketStorage.HEAP;
+    public static final JournalSyncMode DEFAULT_JOURNAL_SYNC_MODE = JournalSyncMode.COMMIT;
+    public static final int DEFAULT_JOURNAL_SYNC_INTERVAL = 50; // in milliseconds, INTERVAL mode only
+    public static final int DEFAULT_JOURNAL_SYNC_BATCH = 1024; // records, INTERVAL mode only
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 300000; // in milliseconds
+
+    // Registered users, in the data directory
+    public static final String VENDORS_FILE = "vendors.dat";
+    public static final String CUSTOMERS_FILE = "customers.dat";
+
+    // Password hashing, PBKDF2 iterations follow the OWASP guidance for HMAC-SHA256
+    public static final int PASSWORD_HASH_ITERATIONS = 600000;
+    public static final int CREDENTIAL_QUEUE_CAPACITY = 64; // Hash requests waiting for a worker before new ones are turned away
+    public static final int SESSION_CACHE_TTL = 300000; // in milliseconds
+    public static final int SESSION_CACHE_CAPACITY = 10000;
+    public static final int LOGIN_TIMEOUT = 10000; // in milliseconds
+
+    // Number of activity log entries kept in memory for the log viewer
+    public static final int ACTIVITY_LOG_CAPACITY = 10000;
+
+    // Activity log writer defaults
+    public static final int LOG_QUEUE_CAPACITY = 8192;
+    public static final int DEFAULT_LOG_FLUSH_INTERVAL = 200; // in milliseconds
+    public static final int DEFAULT_LOG_BATCH_SIZE = 256;
+    public static final LogOverflowPolicy DEFAULT_LOG_OVERFLOW_POLICY = LogOverflowPolicy.BLOCK;
 }
@@ -0,0 +1,183 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Hashes and checks passwords on a small bounded pool of worker threads, so slow hashing never runs on the caller's thread
+// A login that checks out is remembered for a short time as a keyed digest of the password. Logging in again within
+// that time compares the digest instead of hashing the password again. When the workers and their queue are full,
+// new requests fail straight away with a RejectedExecutionException rather than piling up.
+public class CredentialStore {
+    private static final String SESSION_MAC = "HmacSHA256";
+
+    private final int iterations;
+    private final long sessionTtlNanos;
+    private final int sessionCapacity;
+    private final ThreadPoolExecutor hashers;
+    private final Map<User, Session> sessions = new ConcurrentHashMap<>();
+    private final SecretKeySpec sessionKey; // Random per run, so cached digests mean nothing outside this process
+    private final ThreadLocal<Mac> sessionMacs;
+    private final PasswordHash unknownUser; // Checked for an unknown email, so it takes as long as a wrong password
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile LatencyHistogram hashLatency;
+
+    // sessionTtlMillis of 0 turns the session cache off
+    public CredentialStore(int iterations, int threads, int queueCapacity, long sessionTtlMillis, int sessionCapacity) {
+        this.iterations = iterations;
+        this.sessionTtlNanos = TimeUnit.MILLISECONDS.toNanos(sessionTtlMillis);
+        this.sessionCapacity = sessionCapacity;
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.hashers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "credential-hasher-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.sessionKey = new SecretKeySpec(key, SESSION_MAC);
+        this.sessionMacs = ThreadLocal.withInitial(this::newSessionMac);
+        this.unknownUser = PasswordHash.unmatchable(iterations); // Costs nothing until it is checked
+    }
+
+    // A store with the default hash strength, worker count and session cache
+    public static CredentialStore createDefault() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new CredentialStore(Constants.PASSWORD_HASH_ITERATIONS, threads, Constants.CREDENTIAL_QUEUE_CAPACITY,
+                Constants.SESSION_CACHE_TTL, Constants.SESSION_CACHE_CAPACITY);
+    }
+
+    // Hashes a new password on a worker thread
+    public CompletableFuture<PasswordHash> hash(String password) {
+        return submit(() -> PasswordHash.create(password, iterations));
+    }
+
+    // Completes with the user the email and password belong to, or null if either is wrong
+    // A repeated login within the session time completes on the caller's thread without hashing
+    public <T extends User> CompletableFuture<T> login(UserRegistry<T> registry, String email, String password) {
+        T user = registry.getByEmail(email);
+        PasswordHash stored = user == null ? null : user.getPasswordHash();
+        byte[] digest = stored == null || sessionTtlNanos <= 0 ? null : sessionDigest(password);
+        if (digest != null && hasSession(user, digest)) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(user);
+        }
+        cacheMisses.increment();
+        return submit(() -> {
+            if (stored == null) {
+                unknownUser.matches(password);
+                return null;
+            }
+            if (!stored.matches(password)) {
+                return null;
+            }
+            if (digest != null) {
+                remember(user, digest);
+            }
+            return user;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                try {
+                    return task.get();
+                } finally {
+                    LatencyHistogram latency = hashLatency;
+                    if (latency != null) {
+                        latency.record(System.nanoTime() - started);
+                    }
+                }
+            }, hashers);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean hasSession(User user, byte[] digest) {
+        Session session = sessions.get(user);
+        if (session == null) {
+            return false;
+        }
+        if (System.nanoTime() - session.expiresAt >= 0) {
+            sessions.remove(user, session);
+            return false;
+        }
+        return MessageDigest.isEqual(session.digest, digest);
+    }
+
+    private void remember(User user, byte[] digest) {
+        long now = System.nanoTime();
+        if (sessions.size() >= sessionCapacity && !sessions.containsKey(user)) {
+            sessions.values().removeIf(session -> now - session.expiresAt >= 0);
+            if (sessions.size() >= sessionCapacity) {
+                return; // Full of live sessions, this login is simply not cached
+            }
+        }
+        sessions.put(user, new Session(digest, now + sessionTtlNanos));
+    }
+
+    private byte[] sessionDigest(String password) {
+        return sessionMacs.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newSessionMac() {
+        try {
+            Mac mac = Mac.getInstance(SESSION_MAC);
+            mac.init(sessionKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(SESSION_MAC + " is not available: " + e.getMessage(), e);
+        }
+    }
+
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("credentials.sessionHits", cacheHits::sum);
+        registry.gauge("credentials.sessionMisses", cacheMisses::sum);
+        registry.gauge("credentials.rejected", rejected::sum);
+        registry.gauge("credentials.queued", () -> hashers.getQueue().size());
+        registry.gauge("credentials.sessions", sessions::size);
+        this.hashLatency = registry.histogram("credentials.hash");
+    }
+
+    public long getSessionHits() {
+        return cacheHits.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // Stops the worker threads, requests still queued are dropped
+    public void close() {
+        hashers.shutdownNow();
+    }
+
+    // Keyed digest of a password that checked out, and when it stops counting
+    private static final class Session {
+        private final byte[] digest;
+        private final long expiresAt; // System.nanoTime() value
+
+        private Session(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
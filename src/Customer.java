@@ -1,43 +1,39 @@
-import java.util.Map;
-
 public class Customer extends User implements RunnableTask {
     private final TicketPool ticketPool;
     private volatile int totalTicketsDesired;
     private volatile int customerRetrievalInterval; // in milliseconds
     private volatile boolean running;
     private volatile int ticketsPurchased;
+    private final long waitTimeout; // How long to wait for tickets when the pool is empty, in milliseconds
+    private volatile int purchaseBatchSize = 1; // Tickets bought per attempt, more than 1 uses bulk purchases
+    private volatile BulkPurchaseMode bulkPurchaseMode = BulkPurchaseMode.BEST_EFFORT;
 
     // Constructor
-    public Customer(int customerId, String name, String email, String password, String mobileNumber,
-                    int totalTicketsDesired, int customerRetrievalInterval, TicketPool ticketPool) {
-        super(customerId, name, email, password, mobileNumber);
+    public Customer(int customerId, String name, String email, String mobileNumber,
+                    int totalTicketsDesired, int customerRetrievalInterval, long waitTimeout, TicketPool ticketPool) {
+        super(customerId, name, email, mobileNumber);
         this.ticketPool = ticketPool;
         this.totalTicketsDesired = totalTicketsDesired;
         this.customerRetrievalInterval = customerRetrievalInterval;
         this.running = true; // Initialize as running
         this.ticketsPurchased = 0;
+        this.waitTimeout = waitTimeout;
     }
 
     @Override
     public void run() {
         while (running && ticketsPurchased < totalTicketsDesired) {
             try {
-                // Attempt to purchase a ticket
-                Map<String, Object> purchaseResult = ticketPool.removeTicket(this.id);
-                boolean success = (boolean) purchaseResult.get("success");
-
-                if (success) {
-                    ticketsPurchased++;
-                    Utils.addLog(String.format("Customer-%d purchased a ticket. Total purchased: %d", id, ticketsPurchased));
-                } else {
-                    // Terminate the loop as there are no tickets left
-                    Utils.addLog(String.format("Customer-%d failed to purchase a ticket: %s", id, purchaseResult.get("message")));
+                // Attempt to purchase a ticket, or a group of tickets in bulk mode
+                boolean success = purchaseBatchSize > 1 ? purchaseBatch() : purchaseSingle();
+                if (!success) {
+                    // Terminate the loop as no tickets arrived within the wait timeout
                     break;
                 }
 
                 // If the customer has purchased all desired tickets
                 if (ticketsPurchased >= totalTicketsDesired) {
-                    Utils.addLog(String.format("Customer-%d successfully purchased all desired tickets %d", id, totalTicketsDesired));
+                    Utils.addLog(LogEventType.CUSTOMER_COMPLETED, id, LogEvent.NONE, totalTicketsDesired);
                     break;
                 }
 
@@ -47,12 +43,40 @@ public class Customer extends User implements RunnableTask {
                 running = false;
                 Thread.currentThread().interrupt();
                 // Log thread interruption
-                Utils.addLog("Customer-" + id + " purchasing thread interrupted.");
+                Utils.addLog(LogEventType.CUSTOMER_INTERRUPTED, id, LogEvent.NONE, LogEvent.NONE);
             }
         }
 
         // Log when the customer stops purchasing for any reason
-        Utils.addLog(String.format("Customer-%d has stopped purchasing. Tickets purchased: %d.", id, ticketsPurchased));
+        Utils.addLog(LogEventType.CUSTOMER_FINISHED, id, LogEvent.NONE, ticketsPurchased);
+    }
+
+    // Waits up to waitTimeout for a ticket if the pool is empty
+    private boolean purchaseSingle() throws InterruptedException {
+        PurchaseResult purchaseResult = ticketPool.removeTicket(this.id, waitTimeout);
+        boolean success = purchaseResult.isSuccess();
+        if (success) {
+            ticketsPurchased++;
+            Utils.addLog(LogEventType.CUSTOMER_PURCHASED, id, LogEvent.NONE, ticketsPurchased);
+        } else {
+            Utils.addLog(new LogEvent(LogEventType.CUSTOMER_PURCHASE_FAILED, id, LogEvent.NONE, LogEvent.NONE,
+                    purchaseResult.getMessage()));
+        }
+        return success;
+    }
+
+    // Buys up to purchaseBatchSize tickets in a single call to the pool
+    private boolean purchaseBatch() throws InterruptedException {
+        int wanted = Math.min(purchaseBatchSize, totalTicketsDesired - ticketsPurchased);
+        BulkPurchaseResult purchaseResult = ticketPool.removeTickets(this.id, wanted, bulkPurchaseMode, waitTimeout);
+        if (purchaseResult.isSuccess()) {
+            ticketsPurchased += purchaseResult.getTicketCount();
+            Utils.addLog(LogEventType.CUSTOMER_PURCHASED, id, LogEvent.NONE, ticketsPurchased);
+        } else {
+            Utils.addLog(new LogEvent(LogEventType.CUSTOMER_PURCHASE_FAILED, id, LogEvent.NONE, LogEvent.NONE,
+                    purchaseResult.getMessage()));
+        }
+        return purchaseResult.isSuccess();
     }
 
     @Override
@@ -69,4 +93,51 @@ public class Customer extends User implements RunnableTask {
             this.running = true;
         }
     }
+
+    // Saved settings of a customer, the retrieval interval is system-wide and comes from the configuration
+    // A customer loaded while the pool is running counts the tickets they already own towards the tickets they want
+    public static UserStore.Codec<Customer> storeCodec(Configuration config, TicketPool ticketPool) {
+        return new UserStore.Codec<Customer>() {
+            @Override
+            public int[] settings(Customer customer) {
+                return new int[] {customer.getTotalTicketsDesired(), customer.getPurchaseBatchSize(),
+                        customer.getBulkPurchaseMode().ordinal()};
+            }
+
+            @Override
+            public Customer create(int id, String name, String email, String mobileNumber, int[] settings) {
+                Customer customer = new Customer(id, name, email, mobileNumber, settings[0],
+                        config.getCustomerRetrievalRate(), config.getWaitTimeout(), ticketPool);
+                customer.setPurchaseBatch(settings[1], BulkPurchaseMode.values()[settings[2]]);
+                if (ticketPool != null) {
+                    customer.ticketsPurchased = Math.min(ticketPool.getTicketCountByCustomer(id),
+                            customer.totalTicketsDesired);
+                }
+                return customer;
+            }
+        };
+    }
+
+    // Changes the pause between purchases, the running task uses it from its next purchase
+    public void setRetrievalInterval(int customerRetrievalInterval) {
+        this.customerRetrievalInterval = customerRetrievalInterval;
+    }
+
+    public int getTotalTicketsDesired() {
+        return totalTicketsDesired;
+    }
+
+    public int getPurchaseBatchSize() {
+        return purchaseBatchSize;
+    }
+
+    public BulkPurchaseMode getBulkPurchaseMode() {
+        return bulkPurchaseMode;
+    }
+
+    // Sets how many tickets are bought per attempt, 1 buys one ticket at a time
+    public synchronized void setPurchaseBatch(int purchaseBatchSize, BulkPurchaseMode bulkPurchaseMode) {
+        this.purchaseBatchSize = purchaseBatchSize;
+        this.bulkPurchaseMode = bulkPurchaseMode;
+    }
 }
@@ -0,0 +1,5 @@
+// How Customer tasks are given threads, vendors always release from the shared VendorScheduler
+public enum ExecutionMode {
+    PLATFORM, // Fixed pools of platform threads, tasks beyond the pool size wait for a free thread
+    VIRTUAL // A new virtual thread per task, so every started task runs straight away
+}
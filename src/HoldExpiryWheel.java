@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Hashed timing wheel that returns expired ticket holds to the pool from a single sweeper thread
+// Scheduling a hold is a lock-free enqueue, each tick the sweeper only looks at the holds filed under that tick's slot
+// Confirmed or released holds are left in their slot, their expiry simply finds the ticket no longer held
+public class HoldExpiryWheel {
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<Hold>> slots; // Only touched by the sweeper thread
+    private final Queue<Hold> pending = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<Hold>> onExpired;
+    private final long startNanos;
+    private long currentTick = 0; // Only touched by the sweeper thread
+    private volatile Thread sweeper;
+    private volatile boolean running = true;
+
+    // The wheel size is rounded up to a power of two, holds further out than one turn wait for later turns
+    public HoldExpiryWheel(long tickMillis, int wheelSize, Consumer<List<Hold>> onExpired) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive.");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.onExpired = onExpired;
+        this.startNanos = System.nanoTime();
+    }
+
+    // Queues a hold to expire after ttlMillis, the sweeper thread is started by the first hold
+    public void schedule(int ticketId, int customerId, int holdStamp, long ttlMillis) {
+        pending.offer(new Hold(ticketId, customerId, holdStamp, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        if (sweeper == null) {
+            startSweeper();
+        }
+    }
+
+    private synchronized void startSweeper() {
+        if (sweeper != null || !running) {
+            return;
+        }
+        Thread thread = new Thread(this::sweepLoop, "hold-expiry-sweeper");
+        thread.setDaemon(true);
+        thread.start();
+        sweeper = thread;
+    }
+
+    // Stops the sweeper thread, holds still on the wheel are not expired
+    public synchronized void stop() {
+        running = false;
+        if (sweeper != null) {
+            LockSupport.unpark(sweeper);
+        }
+    }
+
+    private void sweepLoop() {
+        List<Hold> expired = new ArrayList<>();
+        while (running) {
+            long delay = startNanos + currentTick * tickNanos - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+                continue;
+            }
+            filePending();
+            collectExpired(expired);
+            if (!expired.isEmpty()) {
+                try {
+                    onExpired.accept(expired);
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to expire ticket holds: " + e.getMessage());
+                }
+                expired.clear();
+            }
+            currentTick++;
+        }
+    }
+
+    // Moves newly scheduled holds into the slot of the tick they expire on
+    private void filePending() {
+        Hold hold;
+        while ((hold = pending.poll()) != null) {
+            long ticks = (hold.deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+            hold.deadlineTick = Math.max(ticks, currentTick);
+            slots.get((int) (hold.deadlineTick & mask)).add(hold);
+        }
+    }
+
+    // Takes the holds due on the current tick out of its slot, holds due on a later turn stay where they are
+    private void collectExpired(List<Hold> expired) {
+        List<Hold> slot = slots.get((int) (currentTick & mask));
+        if (slot.isEmpty()) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Hold hold = slot.get(i);
+            if (hold.deadlineTick <= currentTick) {
+                expired.add(hold);
+            } else {
+                slot.set(kept++, hold);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    // A ticket held for a customer, the stamp tells it apart from later holds of the same ticket
+    static final class Hold {
+        final int ticketId;
+        final int customerId;
+        final int holdStamp;
+        final long deadlineNanos;
+        long deadlineTick; // Set by the sweeper when the hold is filed
+
+        Hold(int ticketId, int customerId, int holdStamp, long deadlineNanos) {
+            this.ticketId = ticketId;
+            this.customerId = customerId;
+            this.holdStamp = holdStamp;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// Growable list of ints stored in a plain int array, nothing is boxed
+// Not thread safe, TicketIdIndex guards every list with its stripe lock
+public class IntArrayList {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArrayList(int capacity) {
+        this.elements = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        elements[size++] = value;
+    }
+
+    public void addAll(int[] values) {
+        if (size + values.length > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(size + values.length, elements.length * 2));
+        }
+        System.arraycopy(values, 0, elements, size, values.length);
+        size += values.length;
+    }
+
+    // Adds count consecutive values starting at first
+    public void addRange(int first, int count) {
+        if (size + count > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(size + count, elements.length * 2));
+        }
+        for (int i = 0; i < count; i++) {
+            elements[size++] = first + i;
+        }
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return elements[index];
+    }
+
+    // Removes one occurrence of the value by moving the last element into its place, so the order is not kept
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                elements[i] = elements[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    // Iterates over the first length values of an array as ints, for example a copy returned by toArray
+    public static PrimitiveIterator.OfInt iterator(int[] values, int length) {
+        return new PrimitiveIterator.OfInt() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (index >= length) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.NoSuchElementException;
+
+// First in, first out queue of ints in a circular int array that doubles when full, nothing is boxed
+// Not thread safe, TicketShard guards its queue with the shard lock
+public class IntArrayQueue {
+    private static final int DEFAULT_CAPACITY = 16; // Power of two
+
+    private int[] elements;
+    private int head; // Index of the oldest value
+    private int size;
+
+    public IntArrayQueue() {
+        this.elements = new int[DEFAULT_CAPACITY];
+    }
+
+    public void offer(int value) {
+        ensureCapacity(size + 1);
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    // Adds count consecutive values starting at first
+    public void offerRange(int first, int count) {
+        ensureCapacity(size + count);
+        int mask = elements.length - 1;
+        for (int i = 0; i < count; i++) {
+            elements[(head + size + i) & mask] = first + i;
+        }
+        size += count;
+    }
+
+    // Removes and returns the oldest value
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    // Moves up to max of the oldest values into out starting at offset, returns how many were moved
+    public int pollInto(int[] out, int offset, int max) {
+        int taken = Math.min(max, size);
+        int mask = elements.length - 1;
+        for (int i = 0; i < taken; i++) {
+            out[offset + i] = elements[(head + i) & mask];
+        }
+        head = (head + taken) & mask;
+        size -= taken;
+        return taken;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Grows to the next power of two that fits, unwrapping the values to the start of the new array
+    private void ensureCapacity(int needed) {
+        if (needed <= elements.length) {
+            return;
+        }
+        if (needed > 1 << 30) {
+            throw new IllegalStateException("Queue cannot hold " + needed + " values");
+        }
+        int capacity = elements.length;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        int[] grown = new int[capacity];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, size - firstPart);
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.function.IntFunction;
+
+// Hash map from int keys to objects using open addressing, keys are never boxed
+// Linear probing over a power of two table that doubles once it is more than half full. Entries are never removed,
+// the ticket indexes only ever add keys. Not thread safe, TicketIdIndex guards every map with its stripe lock.
+public class IntObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values; // A null value marks a free slot
+    private int size;
+    private int mask;
+
+    public IntObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Spreads consecutive IDs across the table
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    // Returns the value for the key, creating it first if the key is not in the map
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key, IntFunction<V> create) {
+        int slot = hash(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        V value = create.apply(key);
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+// When journal records are forced to disk, and whether pool operations wait for it
+public enum JournalSyncMode {
+    COMMIT, // Every operation waits until its record is on disk, records queued together share one fsync
+    INTERVAL // Operations do not wait, the journal is forced to disk on the sync interval or once enough records build up
+}
@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Headless entry point that runs a load test scenario without the interactive menus
+// Vendors and customers are created straight from the scenario, run for the scenario's duration against a fresh pool,
+// and a summary of throughput, latency percentiles and lock contention is printed at the end
+public class LoadGenerator {
+    private static final String DEFAULT_SCENARIO_FILE = "scenario.json";
+    private static final String LOAD_TEST_LOG_FILE = "load_test_logs.txt";
+
+    private final LoadScenario scenario;
+    private final TicketPool ticketPool;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<Vendor> vendors = new ArrayList<>();
+    private final List<Future<?>> customerTasks = new ArrayList<>();
+    private final List<Customer> customers = new ArrayList<>();
+
+    public LoadGenerator(LoadScenario scenario) {
+        this.scenario = scenario;
+        this.ticketPool = TicketPool.createStandalone(scenario.getMaxTicketCapacity(), scenario.getPoolShards());
+        this.ticketPool.registerMetrics(metrics);
+    }
+
+    public static void main(String[] args) {
+        String scenarioFile = args.length > 0 ? args[0] : DEFAULT_SCENARIO_FILE;
+        LoadScenario scenario;
+        try {
+            scenario = LoadScenario.load(scenarioFile);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // Drop log entries rather than let a slow disk hold up the actors being measured
+        Utils.startLogWriter(LOAD_TEST_LOG_FILE, Constants.DEFAULT_LOG_FLUSH_INTERVAL, Constants.DEFAULT_LOG_BATCH_SIZE,
+                LogOverflowPolicy.DROP);
+        try {
+            new LoadGenerator(scenario).run();
+        } finally {
+            Utils.shutdownLogWriter();
+        }
+    }
+
+    // Runs the scenario until its duration passes or every actor has finished, then prints the report
+    public void run() {
+        VendorScheduler vendorScheduler = new VendorScheduler(ticketPool, Constants.VENDOR_SCHEDULER_THREADS);
+        ExecutorService customerExecutor = scenario.getExecutionMode() == ExecutionMode.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("load-customer-", 1).factory())
+                : Executors.newFixedThreadPool(Constants.CUSTOMER_THREAD_POOL_SIZE);
+
+        Utils.synchronizedPrintFormat("Running %d vendors and %d customers for up to %d seconds...",
+                scenario.getVendors(), scenario.getCustomers(), scenario.getDurationSeconds());
+        long started = System.nanoTime();
+        for (int id = 1; id <= scenario.getVendors(); id++) {
+            Vendor vendor = new Vendor(id, "Load Vendor " + id, "vendor" + id + "@load.test", "0000000000",
+                    scenario.getTicketsPerRelease(), scenario.getReleaseInterval(), scenario.getTicketsPerVendor(),
+                    scenario.getWaitTimeout(), ticketPool);
+            vendors.add(vendor);
+            vendorScheduler.start(vendor);
+        }
+        for (int id = 1; id <= scenario.getCustomers(); id++) {
+            Customer customer = new Customer(id, "Load Customer " + id, "customer" + id + "@load.test", "0000000000",
+                    scenario.getTicketsPerCustomer(), scenario.getCustomerRetrievalInterval(), scenario.getWaitTimeout(),
+                    ticketPool);
+            if (scenario.getPurchaseBatchSize() > 1) {
+                customer.setPurchaseBatch(scenario.getPurchaseBatchSize(), BulkPurchaseMode.BEST_EFFORT);
+            }
+            customers.add(customer);
+            customerTasks.add(customerExecutor.submit(customer));
+        }
+
+        awaitFinish(vendorScheduler, started + TimeUnit.SECONDS.toNanos(scenario.getDurationSeconds()));
+        long elapsed = System.nanoTime() - started;
+
+        // Stop every actor that is still running
+        for (Vendor vendor : vendors) {
+            vendorScheduler.stop(vendor);
+        }
+        for (int i = 0; i < customers.size(); i++) {
+            customers.get(i).stopTask();
+            customerTasks.get(i).cancel(true);
+        }
+        customerExecutor.shutdownNow();
+        ticketPool.stopHoldExpiry();
+        try {
+            vendorScheduler.shutdown(5, TimeUnit.SECONDS);
+            customerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        printReport(elapsed);
+    }
+
+    // Waits until the deadline, or until no vendor is releasing and no customer is still buying
+    private void awaitFinish(VendorScheduler vendorScheduler, long deadline) {
+        try {
+            while (System.nanoTime() < deadline) {
+                if (allFinished(vendorScheduler)) {
+                    return;
+                }
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean allFinished(VendorScheduler vendorScheduler) {
+        for (Future<?> task : customerTasks) {
+            if (!task.isDone()) {
+                return false;
+            }
+        }
+        for (Vendor vendor : vendors) {
+            if (vendorScheduler.isRunning(vendor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        Utils.synchronizedPrint("\n--- Load Test Results ---");
+        Utils.synchronizedPrintFormat("Duration: %.1f s", seconds);
+        Utils.synchronizedPrintFormat("Tickets released: %d (%.1f per second)",
+                ticketPool.getTotalTicketsReleased(), ticketPool.getTotalTicketsReleased() / seconds);
+        Utils.synchronizedPrintFormat("Tickets sold: %d (%.1f per second)",
+                ticketPool.getTotalTicketsSold(), ticketPool.getTotalTicketsSold() / seconds);
+        Utils.synchronizedPrintFormat("Tickets remaining in pool: %d", ticketPool.getAvailableTickets());
+        Utils.synchronizedPrint("Purchase latencies include time spent waiting for tickets in an empty pool.");
+        Utils.synchronizedPrint(metrics.report());
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.FileReader;
+import java.io.IOException;
+
+import com.google.gson.JsonSyntaxException;
+
+// Settings for a headless load test, read from a JSON scenario file
+// Fields missing from the file keep the defaults below
+public class LoadScenario {
+    private int vendors = 10;
+    private int customers = 100;
+    private int ticketsPerVendor = 1000; // Total each vendor releases
+    private int ticketsPerRelease = 10;
+    private int releaseInterval = 100; // in milliseconds
+    private int ticketsPerCustomer = 100; // Total each customer wants to buy
+    private int purchaseBatchSize = 1;
+    private int customerRetrievalInterval = 10; // in milliseconds
+    private int durationSeconds = 30;
+    private int maxTicketCapacity = 1000;
+    private int poolShards = Constants.DEFAULT_POOL_SHARDS;
+    private ExecutionMode executionMode = ExecutionMode.VIRTUAL;
+    private int waitTimeout = 1000; // in milliseconds
+
+    // Getters
+    public int getVendors() { return vendors; }
+    public int getCustomers() { return customers; }
+    public int getTicketsPerVendor() { return ticketsPerVendor; }
+    public int getTicketsPerRelease() { return ticketsPerRelease; }
+    public int getReleaseInterval() { return releaseInterval; }
+    public int getTicketsPerCustomer() { return ticketsPerCustomer; }
+    public int getPurchaseBatchSize() { return purchaseBatchSize; }
+    public int getCustomerRetrievalInterval() { return customerRetrievalInterval; }
+    public int getDurationSeconds() { return durationSeconds; }
+    public int getMaxTicketCapacity() { return maxTicketCapacity; }
+    public int getPoolShards() { return poolShards; }
+    public ExecutionMode getExecutionMode() { return executionMode; }
+    public int getWaitTimeout() { return waitTimeout; }
+
+    // Reads a scenario file, throws IllegalArgumentException if it cannot be read or has invalid values
+    public static LoadScenario load(String path) {
+        try (FileReader reader = new FileReader(path)) {
+            LoadScenario scenario = Utils.GSON.fromJson(reader, LoadScenario.class);
+            if (scenario == null) {
+                throw new IllegalArgumentException("Scenario file " + path + " is empty.");
+            }
+            scenario.validate();
+            return scenario;
+        } catch (IOException | JsonSyntaxException e) {
+            throw new IllegalArgumentException("Failed to read scenario file " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void validate() {
+        if (vendors <= 0 || customers <= 0) {
+            throw new IllegalArgumentException("A scenario needs at least one vendor and one customer.");
+        }
+        if (ticketsPerVendor <= 0 || ticketsPerRelease <= 0 || ticketsPerCustomer <= 0 || purchaseBatchSize <= 0) {
+            throw new IllegalArgumentException("Ticket counts must be positive.");
+        }
+        if (releaseInterval <= 0 || customerRetrievalInterval < 0 || durationSeconds <= 0 || waitTimeout <= 0) {
+            throw new IllegalArgumentException("Intervals, duration and wait timeout must be positive.");
+        }
+        if (maxTicketCapacity <= 0 || poolShards <= 0) {
+            throw new IllegalArgumentException("Maximum ticket capacity and pool shards must be positive.");
+        }
+        if (executionMode == null) {
+            executionMode = ExecutionMode.VIRTUAL;
+        }
+    }
+}
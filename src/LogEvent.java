@@ -0,0 +1,62 @@
+// A single activity log event stored as plain fields
+// The log line is only built when the log file writer or the log viewer asks for it
+public final class LogEvent {
+    public static final int NONE = -1; // Used for fields that do not apply to the event type
+
+    private final LogEventType type;
+    private final int actorId;
+    private final int ticketId;
+    private final int count;
+    private final long timestamp;
+    private final String detail;
+
+    public LogEvent(LogEventType type, int actorId, int ticketId, int count, String detail) {
+        this.type = type;
+        this.actorId = actorId;
+        this.ticketId = ticketId;
+        this.count = count;
+        this.timestamp = System.currentTimeMillis();
+        this.detail = detail;
+    }
+
+    // Creates a free-form text event
+    public static LogEvent message(String text) {
+        return new LogEvent(LogEventType.MESSAGE, NONE, NONE, NONE, text);
+    }
+
+    public LogEventType getType() {
+        return type;
+    }
+
+    public int getActorId() {
+        return actorId;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    // Appends the log line for this event
+    public void renderTo(StringBuilder out) {
+        type.render(this, out);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(64);
+        renderTo(out);
+        return out.toString();
+    }
+}
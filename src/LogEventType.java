@@ -0,0 +1,164 @@
+// Kinds of activity log events, each knows how to render its event as a log line
+public enum LogEventType {
+    MESSAGE {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append(event.getDetail());
+        }
+    },
+    TICKET_RELEASED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId())
+                    .append(" released ").append(event.getCount()).append(" tickets.");
+        }
+    },
+    RELEASE_REJECTED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId())
+                    .append(" could not release ").append(event.getCount()).append(" tickets. Ticket pool is full.");
+        }
+    },
+    VENDOR_POOL_FULL {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId()).append(": Ticket pool is full. Stopping ticket releases.");
+        }
+    },
+    VENDOR_WAITING {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId()).append(": Ticket pool is full. Waiting for tickets to be sold.");
+        }
+    },
+    VENDOR_RESUMED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId()).append(": Room in the ticket pool. Resuming ticket releases.");
+        }
+    },
+    VENDOR_COMPLETED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor-").append(event.getActorId()).append(" has released all tickets.");
+        }
+    },
+    VENDOR_STOPPED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Vendor ").append(event.getActorId()).append(" stopped releasing tickets.");
+        }
+    },
+    TICKET_SOLD {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" purchased Ticket ID ").append(event.getTicketId())
+                    .append(". Tickets left: ").append(event.getCount());
+        }
+    },
+    NO_TICKETS_AVAILABLE {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" could not purchase a ticket (No tickets available).");
+        }
+    },
+    TICKETS_SOLD_BULK {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" purchased ").append(event.getCount())
+                    .append(" tickets in one order, starting at Ticket ID ").append(event.getTicketId()).append('.');
+        }
+    },
+    BULK_PURCHASE_REJECTED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" could not purchase ").append(event.getCount())
+                    .append(" tickets together (Not enough tickets available).");
+        }
+    },
+    TICKET_HELD {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" is holding Ticket ID ").append(event.getTicketId())
+                    .append(" for ").append(event.getCount()).append(" seconds.");
+        }
+    },
+    HOLD_CONFIRMED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" purchased held Ticket ID ").append(event.getTicketId()).append('.');
+        }
+    },
+    HOLD_RELEASED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" released held Ticket ID ").append(event.getTicketId()).append('.');
+        }
+    },
+    HOLD_EXPIRED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Hold on Ticket ID ").append(event.getTicketId()).append(" for Customer-").append(event.getActorId())
+                    .append(" expired, the ticket is back on sale.");
+        }
+    },
+    TICKET_REFUNDED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" refunded Ticket ID ").append(event.getTicketId()).append('.');
+        }
+    },
+    CUSTOMER_PURCHASED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" purchased a ticket. Total purchased: ").append(event.getCount());
+        }
+    },
+    CUSTOMER_PURCHASE_FAILED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" failed to purchase a ticket: ").append(event.getDetail());
+        }
+    },
+    CUSTOMER_COMPLETED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" successfully purchased all desired tickets ").append(event.getCount());
+        }
+    },
+    CUSTOMER_INTERRUPTED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" purchasing thread interrupted.");
+        }
+    },
+    CUSTOMER_FINISHED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer-").append(event.getActorId()).append(" has stopped purchasing. Tickets purchased: ")
+                    .append(event.getCount()).append('.');
+        }
+    },
+    CUSTOMER_STOPPED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Customer ").append(event.getActorId()).append(" stopped purchasing tickets.");
+        }
+    },
+    CONFIG_CHANGED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Configuration change applied: ").append(event.getDetail());
+        }
+    },
+    CONFIG_REJECTED {
+        @Override
+        void render(LogEvent event, StringBuilder out) {
+            out.append("Configuration change not applied: ").append(event.getDetail());
+        }
+    };
+
+    // Appends the log line for the event
+    abstract void render(LogEvent event, StringBuilder out);
+}
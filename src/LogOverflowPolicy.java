@@ -0,0 +1,6 @@
+// What the activity log writer does when its queue is full
+public enum LogOverflowPolicy {
+    BLOCK, // Wait for the writer to make room
+    DROP, // Discard the new entry
+    COUNT // Discard the new entry and report how many were discarded in the log file
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Off-heap ticket table kept in a memory-mapped file
+// Every ticket is a fixed 16 byte record: its packed state (status, hold stamp and owner, as in Ticket), its ID and its vendor.
+// State changes are compare-and-set operations straight on the mapped memory, so ten million tickets take 160 MB of
+// page cache instead of ten million objects on the heap. The file is mapped in chunks so growing it never remaps
+// the tickets already in it. A checkpoint forces the table to disk and records the journal LSN it covers.
+public class MappedTicketTable {
+    private static final int MAGIC = 0x54544231; // "TTB1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64; // Keeps every record 8 byte aligned for the atomic state updates
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    private static final int CHECKPOINT_SIZE_OFFSET = 16;
+    private static final int CHECKPOINT_LSN_OFFSET = 24;
+    static final int RECORD_SIZE = 16;
+    private static final int STATE_OFFSET = 0;
+    private static final int ID_OFFSET = 8;
+    private static final int VENDOR_OFFSET = 12;
+    private static final int CHUNK_SHIFT = 20; // 1M records, 16 MB per mapping
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    private static final VarHandle STATES = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private volatile MappedByteBuffer[] chunks;
+    private volatile int size; // Records below this index are published
+
+    private MappedTicketTable(FileChannel channel, MappedByteBuffer header, int size) throws IOException {
+        this.channel = channel;
+        this.header = header;
+        int chunkCount = Math.max(1, (size + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            mapped[i] = mapChunk(i);
+        }
+        this.chunks = mapped;
+        this.size = size;
+    }
+
+    // Opens the table file, creating an empty table if there is none
+    public static MappedTicketTable open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                header.putInt(SIZE_OFFSET, 0);
+                header.putInt(CHECKPOINT_SIZE_OFFSET, 0);
+                header.putLong(CHECKPOINT_LSN_OFFSET, -1);
+                header.force();
+            } else if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+                    || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                throw new IOException(file + " is not a ticket table");
+            }
+            int size = header.getInt(SIZE_OFFSET);
+            if (size < 0 || HEADER_SIZE + (long) size * RECORD_SIZE > channel.size()) {
+                throw new IOException(file + " is truncated");
+            }
+            return new MappedTicketTable(channel, header, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedByteBuffer mapChunk(int chunkIndex) throws IOException {
+        long offset = HEADER_SIZE + (long) chunkIndex * CHUNK_RECORDS * RECORD_SIZE;
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) CHUNK_RECORDS * RECORD_SIZE);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        return chunk;
+    }
+
+    private MappedByteBuffer chunkFor(int index) {
+        return chunks[index >>> CHUNK_SHIFT];
+    }
+
+    private static int offsetOf(int index) {
+        return (index & CHUNK_MASK) * RECORD_SIZE;
+    }
+
+    // Appends a record, ticket IDs must be handed out in order starting at 1
+    // Callers serialize appends, readers only see the record once the size is published
+    public void append(int ticketId, int vendorId, long state) {
+        int index = size;
+        if (ticketId != index + 1) {
+            throw new IllegalArgumentException("Ticket ID " + ticketId + " is out of order, expected " + (index + 1));
+        }
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        MappedByteBuffer[] directory = chunks;
+        if (chunkIndex == directory.length) {
+            MappedByteBuffer[] grown = new MappedByteBuffer[directory.length + 1];
+            System.arraycopy(directory, 0, grown, 0, directory.length);
+            try {
+                grown[chunkIndex] = mapChunk(chunkIndex);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to grow the ticket table: " + e.getMessage(), e);
+            }
+            directory = grown;
+            chunks = directory;
+        }
+        MappedByteBuffer chunk = directory[chunkIndex];
+        int offset = offsetOf(index);
+        chunk.putInt(offset + ID_OFFSET, ticketId);
+        chunk.putInt(offset + VENDOR_OFFSET, vendorId);
+        STATES.setVolatile(chunk, offset + STATE_OFFSET, state);
+        header.putInt(SIZE_OFFSET, index + 1);
+        size = index + 1; // Publishes the record to readers
+    }
+
+    // Rewrites a record already in the table, recovery uses this for records the journal wrote after the checkpoint
+    void set(int ticketId, int vendorId, long state) {
+        int index = ticketId - 1;
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Ticket ID " + ticketId + " is not in a table of " + size + " tickets");
+        }
+        MappedByteBuffer chunk = chunkFor(index);
+        int offset = offsetOf(index);
+        chunk.putInt(offset + ID_OFFSET, ticketId);
+        chunk.putInt(offset + VENDOR_OFFSET, vendorId);
+        STATES.setVolatile(chunk, offset + STATE_OFFSET, state);
+    }
+
+    public void setState(int ticketId, long state) {
+        int index = ticketId - 1;
+        STATES.setVolatile(chunkFor(index), offsetOf(index) + STATE_OFFSET, state);
+    }
+
+    // Forgets every record from the given size on
+    // Recovery cuts off records whose release never reached the journal, or empties a table it rebuilds from a snapshot
+    void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IllegalArgumentException("Cannot truncate a table of " + size + " tickets to " + newSize);
+        }
+        size = newSize;
+        header.putInt(SIZE_OFFSET, newSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getVendorId(int ticketId) {
+        int index = ticketId - 1;
+        return chunkFor(index).getInt(offsetOf(index) + VENDOR_OFFSET);
+    }
+
+    public long getState(int ticketId) {
+        int index = ticketId - 1;
+        return (long) STATES.getVolatile(chunkFor(index), offsetOf(index) + STATE_OFFSET);
+    }
+
+    public boolean compareAndSetState(int ticketId, long expected, long updated) {
+        int index = ticketId - 1;
+        return STATES.compareAndSet(chunkFor(index), offsetOf(index) + STATE_OFFSET, expected, updated);
+    }
+
+    // Journal LSN of the last checkpoint, -1 if the table has never been checkpointed
+    public long getCheckpointLsn() {
+        return header.getLong(CHECKPOINT_LSN_OFFSET);
+    }
+
+    // Number of tickets the last checkpoint forced to disk, later records may not have reached the disk before a crash
+    public int getCheckpointSize() {
+        return header.getInt(CHECKPOINT_SIZE_OFFSET);
+    }
+
+    // Forces every record to disk, then records that the table holds every journal record below the LSN
+    // The records are forced before the header, so the header never claims more than the disk holds
+    public synchronized void checkpoint(long journalLsn) {
+        int checkpointSize = size;
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        header.putInt(CHECKPOINT_SIZE_OFFSET, checkpointSize);
+        header.putLong(CHECKPOINT_LSN_OFFSET, journalLsn);
+        header.force();
+    }
+
+    // Bytes of the file mapped into memory
+    public long getMappedBytes() {
+        return HEADER_SIZE + (long) chunks.length * CHUNK_RECORDS * RECORD_SIZE;
+    }
+
+    // Closes the file, the mappings stay valid until they are garbage collected
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the ticket table: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Named counters, gauges, latency histograms and per-actor throughput for the whole system
+// Recording only touches striped or lock-free structures, the text report is built when someone asks for it
+public class MetricsRegistry {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final int BUSIEST_ACTORS = 10; // Actors listed per throughput in the report
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, ActorThroughput> throughputs = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+    private String dumpFile;
+
+    // Each lookup returns the same instance for the same name, so callers can keep it and skip the map
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public ActorThroughput throughput(String name) {
+        return throughputs.computeIfAbsent(name, key -> new ActorThroughput());
+    }
+
+    // A gauge is read from the supplier whenever a report is built
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // Builds a text report of every metric, sorted by name
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("--- Metrics at ").append(LocalDateTime.now().format(TIMESTAMP)).append(" ---").append(System.lineSeparator());
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            out.append(gauge.getKey()).append(": ").append(gauge.getValue().getAsLong()).append(System.lineSeparator());
+        }
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            out.append(counter.getKey()).append(": ").append(counter.getValue().sum()).append(System.lineSeparator());
+        }
+        for (Map.Entry<String, LatencyHistogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            appendHistogram(out, histogram.getKey(), histogram.getValue());
+        }
+        for (Map.Entry<String, ActorThroughput> throughput : new TreeMap<>(throughputs).entrySet()) {
+            appendThroughput(out, throughput.getKey(), throughput.getValue());
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(name).append(" (ms, ").append(histogram.getCount()).append(" calls): mean ")
+                .append(LatencyHistogram.formatMillis((long) histogram.getMeanNanos()));
+        for (double percentile : PERCENTILES) {
+            out.append(", p").append(percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile))
+                    .append(' ').append(LatencyHistogram.formatMillis(histogram.getPercentileNanos(percentile)));
+        }
+        out.append(", max ").append(LatencyHistogram.formatMillis(histogram.getMaxNanos())).append(System.lineSeparator());
+    }
+
+    private static void appendThroughput(StringBuilder out, String name, ActorThroughput throughput) {
+        out.append(name).append(" (busiest ").append(Math.min(BUSIEST_ACTORS, throughput.getActorCount()))
+                .append(" of ").append(throughput.getActorCount()).append("):").append(System.lineSeparator());
+        for (ActorThroughput.Rate rate : throughput.busiest(BUSIEST_ACTORS)) {
+            out.append(String.format(" - ID %d: %d tickets, %.2f per second", rate.getActorId(), rate.getTickets(),
+                    rate.getTicketsPerSecond())).append(System.lineSeparator());
+        }
+    }
+
+    // Appends a report to the file every intervalMillis until stopDumping is called
+    public synchronized void startDumping(String file, long intervalMillis) {
+        stopDumping();
+        dumpFile = file;
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dumper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the interval dumps and writes one last report so the file ends with the final figures
+    public synchronized void stopDumping() {
+        if (dumper == null) {
+            return;
+        }
+        dumper.shutdownNow();
+        dumper = null;
+        dump(dumpFile);
+    }
+
+    // Appends the current report to the file
+    public void dump(String file) {
+        try {
+            Files.write(Paths.get(file), (report() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
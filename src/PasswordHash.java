@@ -0,0 +1,73 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted PBKDF2 hash of a password, the password itself is never kept
+// The iteration count is stored with the hash, so raising it later still verifies hashes made with the old count.
+public final class PasswordHash {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] salt;
+    private final byte[] hash;
+    private final int iterations;
+
+    public PasswordHash(byte[] salt, byte[] hash, int iterations) {
+        this.salt = salt.clone();
+        this.hash = hash.clone();
+        this.iterations = iterations;
+    }
+
+    // Hashes the password with a fresh random salt, deliberately slow
+    public static PasswordHash create(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return new PasswordHash(salt, derive(password, salt, iterations), iterations);
+    }
+
+    // A random salt and hash that no password derives to, nothing is hashed to make it
+    // Checking a password against it takes exactly as long as checking against a real hash with the same iterations
+    public static PasswordHash unmatchable(int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] hash = new byte[HASH_BITS / 8];
+        RANDOM.nextBytes(salt);
+        RANDOM.nextBytes(hash);
+        return new PasswordHash(salt, hash, iterations);
+    }
+
+    // Hashes the password again with the same salt and compares in constant time, as slow as create
+    public boolean matches(String password) {
+        byte[] candidate = derive(password, salt, iterations);
+        return MessageDigest.isEqual(candidate, hash);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        char[] chars = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public byte[] getHash() {
+        return hash.clone();
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+}
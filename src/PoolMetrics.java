@@ -0,0 +1,26 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// The registry metrics the ticket pool records into, looked up once so the hot paths never touch the registry maps
+final class PoolMetrics {
+    final LatencyHistogram addTickets;
+    final LatencyHistogram removeTicket;
+    final LatencyHistogram removeTickets;
+    final LatencyHistogram refundTicket;
+    final LatencyHistogram lockWait; // Time spent waiting for a shard or release lock another thread held
+    final LongAdder noTicketsAvailable;
+    final LongAdder releasesRejected;
+    final ActorThroughput vendorReleases;
+    final ActorThroughput customerPurchases;
+
+    PoolMetrics(MetricsRegistry registry) {
+        this.addTickets = registry.histogram("pool.addTickets");
+        this.removeTicket = registry.histogram("pool.removeTicket");
+        this.removeTickets = registry.histogram("pool.removeTickets");
+        this.refundTicket = registry.histogram("pool.refundTicket");
+        this.lockWait = registry.histogram("pool.lockWait");
+        this.noTicketsAvailable = registry.counter("pool.noTicketsAvailable");
+        this.releasesRejected = registry.counter("pool.releasesRejected");
+        this.vendorReleases = registry.throughput("vendor.ticketsReleased");
+        this.customerPurchases = registry.throughput("customer.ticketsPurchased");
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the ticket pool durable: recovers it on startup, journals every change and takes periodic snapshots
+// Recovery loads the newest snapshot and replays the journal written after it, so startup time depends on the
+// snapshot interval rather than on how long the system has been running
+public class PoolPersistence {
+    private final Path directory;
+    private final TicketPool ticketPool;
+    private final TicketJournal journal;
+    private final Recovery recovered;
+    private final long recoveryNanos;
+    private ScheduledExecutorService snapshotter;
+
+    private PoolPersistence(Path directory, TicketPool ticketPool, TicketJournal journal, Recovery recovered,
+                            long recoveryNanos) {
+        this.directory = directory;
+        this.ticketPool = ticketPool;
+        this.journal = journal;
+        this.recovered = recovered;
+        this.recoveryNanos = recoveryNanos;
+    }
+
+    // Restores the pool from the data directory, then journals every change the pool makes from here on
+    // The pool must be empty, snapshots are only taken if snapshotIntervalMillis is positive
+    public static PoolPersistence open(TicketPool ticketPool, String dataDirectory, JournalSyncMode syncMode,
+                                       long syncIntervalMillis, int syncBatch, long snapshotIntervalMillis)
+            throws IOException {
+        Path directory = Paths.get(dataDirectory);
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        Recovery state = recover(directory, ticketPool);
+        long recoveryNanos = System.nanoTime() - started;
+
+        TicketJournal journal = new TicketJournal(directory, state.journalEnd, syncMode, syncIntervalMillis, syncBatch);
+        ticketPool.enableJournal(journal);
+        PoolPersistence persistence = new PoolPersistence(directory, ticketPool, journal, state, recoveryNanos);
+        if (snapshotIntervalMillis > 0) {
+            persistence.startSnapshots(snapshotIntervalMillis);
+        }
+        return persistence;
+    }
+
+    // Restores the pool from the newest snapshot or ticket table checkpoint and the journal written after it
+    // The journal continues at the returned journal end
+    static Recovery recover(Path directory, TicketPool ticketPool) throws IOException {
+        MappedTicketTable table = ticketPool.getTicketTable();
+        PoolSnapshot snapshot;
+        if (table == null) {
+            snapshot = readState(directory, true);
+        } else {
+            snapshot = PoolSnapshot.loadLatest(directory);
+            if (table.getCheckpointLsn() >= snapshot.getJournalLsn()) {
+                return recoverTable(directory, ticketPool, table);
+            }
+            // The table is older than the snapshot, it is rewritten from the snapshot
+            snapshot.setJournalEnd(TicketJournal.replay(directory, snapshot.getJournalLsn(), snapshot));
+        }
+        ticketPool.restore(snapshot);
+        return new Recovery(snapshot.getJournalEnd(), snapshot.size(), snapshot.getReplayedRecords(),
+                snapshot.getHighestVendorId(), snapshot.getHighestCustomerId());
+    }
+
+    // Brings the pool's mapped table up to date where it is: only the tickets the journal changed after the
+    // checkpoint are written, and nothing the checkpoint covers is copied to the heap or rewritten
+    private static Recovery recoverTable(Path directory, TicketPool ticketPool, MappedTicketTable table)
+            throws IOException {
+        TableReplay replay = new TableReplay(table);
+        long journalEnd = TicketJournal.replay(directory, table.getCheckpointLsn(), replay);
+        replay.dropUnjournaled();
+        ticketPool.restoreFromTable();
+        int highestVendorId = 0;
+        int highestCustomerId = 0;
+        for (int ticketId = 1; ticketId <= table.size(); ticketId++) {
+            highestVendorId = Math.max(highestVendorId, table.getVendorId(ticketId));
+            highestCustomerId = Math.max(highestCustomerId, Ticket.buyerOf(table.getState(ticketId)));
+        }
+        return new Recovery(journalEnd, table.size(), replay.replayedRecords, highestVendorId, highestCustomerId);
+    }
+
+    // Reads the tickets in the data directory as of the last journal record without touching a pool
+    // A table file left by a run that kept its tickets in a mapped table is read if it is newer than the last snapshot
+    // Recovery repairs a damaged journal tail as it reads it, otherwise the journal is only read up to the damage
+    static PoolSnapshot readState(Path directory, boolean repair) throws IOException {
+        PoolSnapshot state = PoolSnapshot.loadLatest(directory);
+        Path tableFile = directory.resolve(Constants.TICKET_TABLE_FILE);
+        if (Files.exists(tableFile)) {
+            // Left by a run that kept its tickets in a mapped table, it may be newer than the last snapshot file
+            MappedTicketTable previous = MappedTicketTable.open(tableFile);
+            try {
+                state = newerOf(state, previous);
+            } finally {
+                previous.close();
+            }
+        }
+        state.setJournalEnd(repair
+                ? TicketJournal.replay(directory, state.getJournalLsn(), state)
+                : TicketJournal.replayReadOnly(directory, state.getJournalLsn(), state));
+        return state;
+    }
+
+    private static PoolSnapshot newerOf(PoolSnapshot snapshot, MappedTicketTable table) {
+        return table.getCheckpointLsn() > snapshot.getJournalLsn() ? PoolSnapshot.fromTable(table) : snapshot;
+    }
+
+    private void startSnapshots(long intervalMillis) {
+        snapshotter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pool-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                System.err.println("Failed to write a ticket pool snapshot: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Starts a new journal segment, snapshots the pool at that point and deletes what the snapshot replaces
+    // A mapped ticket table is its own snapshot, it is forced to disk instead of being copied to a snapshot file
+    // Returns the journal LSN the snapshot was taken at
+    public synchronized long takeSnapshot() throws IOException {
+        long lsn = journal.rotate();
+        MappedTicketTable table = ticketPool.getTicketTable();
+        if (table != null) {
+            table.checkpoint(lsn);
+        } else {
+            ticketPool.captureSnapshot(lsn).write(directory);
+        }
+        journal.deleteSegmentsBefore(lsn);
+        PoolSnapshot.deleteOlderThan(directory, lsn);
+        return lsn;
+    }
+
+    public void registerMetrics(MetricsRegistry registry) {
+        journal.registerMetrics(registry);
+        MappedTicketTable table = ticketPool.getTicketTable();
+        if (table != null) {
+            registry.gauge("tickets.mappedBytes", table::getMappedBytes);
+        }
+    }
+
+    // Stops the snapshot timer, takes a final snapshot so the next startup has nothing to replay, and closes the journal
+    // Call after every vendor and customer has stopped
+    public void close() {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+            try {
+                snapshotter.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            takeSnapshot();
+        } catch (IOException e) {
+            System.err.println("Failed to write the final ticket pool snapshot: " + e.getMessage());
+        }
+        journal.close();
+    }
+
+    // Recovery statistics for the startup message
+    public int getRecoveredTickets() {
+        return recovered.tickets;
+    }
+
+    public long getReplayedRecords() {
+        return recovered.replayedRecords;
+    }
+
+    public long getRecoveryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(recoveryNanos);
+    }
+
+    // Highest vendor and customer IDs in the recovered tickets, new users are numbered after them
+    // so a new account never takes over tickets that belonged to an account from an earlier run
+    public int getHighestVendorId() {
+        return recovered.highestVendorId;
+    }
+
+    public int getHighestCustomerId() {
+        return recovered.highestCustomerId;
+    }
+
+    // What recovery found, kept for the startup message and for numbering new users
+    static final class Recovery {
+        final long journalEnd;
+        final int tickets;
+        final long replayedRecords;
+        final int highestVendorId;
+        final int highestCustomerId;
+
+        Recovery(long journalEnd, int tickets, long replayedRecords, int highestVendorId, int highestCustomerId) {
+            this.journalEnd = journalEnd;
+            this.tickets = tickets;
+            this.replayedRecords = replayedRecords;
+            this.highestVendorId = highestVendorId;
+            this.highestCustomerId = highestCustomerId;
+        }
+    }
+
+    // Applies the journal written after a table checkpoint straight to the table, each record sets the ticket outright
+    // Records up to the checkpoint size were forced to disk and are left as they are, like tickets already in a
+    // snapshot. Records appended after the checkpoint may not have reached the disk, so their releases rewrite them.
+    private static final class TableReplay implements TicketJournal.RecordHandler {
+        private final MappedTicketTable table;
+        private final int checkpointSize;
+        private int journaledSize; // Highest ticket ID the checkpoint or the journal accounts for
+        long replayedRecords;
+
+        TableReplay(MappedTicketTable table) {
+            this.table = table;
+            this.checkpointSize = Math.min(table.getCheckpointSize(), table.size());
+            this.journaledSize = checkpointSize;
+        }
+
+        @Override
+        public void apply(byte type, int a, int b, int c) {
+            replayedRecords++;
+            switch (type) {
+                case TicketJournal.RELEASE:
+                    for (int ticketId = Math.max(b, checkpointSize + 1); ticketId < b + c; ticketId++) {
+                        if (ticketId <= table.size()) {
+                            table.set(ticketId, a, Ticket.availableState());
+                        } else {
+                            while (table.size() < ticketId) {
+                                // Fills a gap left by a lost record, cannot happen with an intact journal
+                                table.append(table.size() + 1, a, Ticket.availableState());
+                            }
+                        }
+                    }
+                    journaledSize = Math.max(journaledSize, b + c - 1);
+                    break;
+                case TicketJournal.SALE:
+                    if (b >= 1 && b <= table.size()) {
+                        table.setState(b, Ticket.recoveredState(a));
+                    }
+                    break;
+                case TicketJournal.REFUND:
+                    if (b >= 1 && b <= table.size()) {
+                        table.setState(b, Ticket.availableState());
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal record type " + type);
+            }
+        }
+
+        // Cuts off records appended after the checkpoint whose release never reached the journal
+        // Their release was never durable, so none of them can have been sold durably either
+        void dropUnjournaled() {
+            if (table.size() > journaledSize) {
+                table.truncate(journaledSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Compact image of every ticket in the pool: its vendor and, if it is sold, its buyer
+// A snapshot records the journal LSN it was taken at, recovery loads it and replays the journal from that LSN.
+// Snapshots are taken while sales carry on, replaying a record the snapshot already reflects leaves the ticket as it is.
+public class PoolSnapshot implements TicketJournal.RecordHandler {
+    private static final int MAGIC = 0x54504F4C; // "TPOL"
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int NOT_SOLD = -1;
+
+    private final long journalLsn;
+    private int size;
+    private int[] vendorIds; // Indexed by ticket ID - 1
+    private int[] buyerIds; // NOT_SOLD for tickets that are available or held
+    private long replayedRecords;
+    private long journalEnd; // LSN after the last replayed record, where the journal continues
+
+    PoolSnapshot(long journalLsn, int capacity) {
+        this.journalLsn = journalLsn;
+        this.vendorIds = new int[Math.max(16, capacity)];
+        this.buyerIds = new int[vendorIds.length];
+    }
+
+    // State of a pool that has never released a ticket
+    static PoolSnapshot empty() {
+        return new PoolSnapshot(0, 0);
+    }
+
+    // Reads the tickets a mapped table held at its last checkpoint
+    // Records appended after the checkpoint may not have reached the disk before a crash, the journal recreates them
+    static PoolSnapshot fromTable(MappedTicketTable table) {
+        int checkpointSize = Math.min(table.getCheckpointSize(), table.size());
+        PoolSnapshot snapshot = new PoolSnapshot(table.getCheckpointLsn(), checkpointSize);
+        for (int ticketId = 1; ticketId <= checkpointSize; ticketId++) {
+            snapshot.add(table.getVendorId(ticketId), Ticket.buyerOf(table.getState(ticketId)));
+        }
+        return snapshot;
+    }
+
+    // Appends the next ticket, tickets must be added in ticket ID order
+    void add(int vendorId, int buyerId) {
+        ensureCapacity(size + 1);
+        vendorIds[size] = vendorId;
+        buyerIds[size] = buyerId;
+        size++;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > vendorIds.length) {
+            int grown = Math.max(needed, vendorIds.length * 2);
+            vendorIds = Arrays.copyOf(vendorIds, grown);
+            buyerIds = Arrays.copyOf(buyerIds, grown);
+        }
+    }
+
+    // Applies a journal record during recovery, each record sets the ticket's state outright
+    @Override
+    public void apply(byte type, int a, int b, int c) {
+        replayedRecords++;
+        switch (type) {
+            case TicketJournal.RELEASE:
+                // Tickets already in the snapshot are left as they are, later records may have sold them
+                for (int ticketId = Math.max(b, size + 1); ticketId < b + c; ticketId++) {
+                    while (size < ticketId - 1) {
+                        add(a, NOT_SOLD); // Fills a gap left by a lost record, cannot happen with an intact journal
+                    }
+                    add(a, NOT_SOLD);
+                }
+                break;
+            case TicketJournal.SALE:
+                if (b >= 1 && b <= size) {
+                    buyerIds[b - 1] = a;
+                }
+                break;
+            case TicketJournal.REFUND:
+                if (b >= 1 && b <= size) {
+                    buyerIds[b - 1] = NOT_SOLD;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    public long getJournalLsn() {
+        return journalLsn;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getVendorId(int ticketId) {
+        return vendorIds[ticketId - 1];
+    }
+
+    // The customer the ticket is sold to, -1 if it is on sale
+    public int getBuyerId(int ticketId) {
+        return buyerIds[ticketId - 1];
+    }
+
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public long getJournalEnd() {
+        return journalEnd;
+    }
+
+    void setJournalEnd(long journalEnd) {
+        this.journalEnd = journalEnd;
+    }
+
+    public int getHighestVendorId() {
+        int highest = 0;
+        for (int i = 0; i < size; i++) {
+            highest = Math.max(highest, vendorIds[i]);
+        }
+        return highest;
+    }
+
+    public int getHighestCustomerId() {
+        int highest = 0;
+        for (int i = 0; i < size; i++) {
+            highest = Math.max(highest, buyerIds[i]);
+        }
+        return highest;
+    }
+
+    static Path snapshotPath(Path directory, long journalLsn) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, journalLsn, SNAPSHOT_SUFFIX));
+    }
+
+    // Writes the snapshot to a temporary file, forces it to disk and renames it into place
+    // A crash part way through leaves the previous snapshot as the latest one
+    public Path write(Path directory) throws IOException {
+        Path target = snapshotPath(directory, journalLsn);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalLsn);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(vendorIds[i]);
+                out.writeInt(buyerIds[i]);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    // Loads the newest snapshot that reads back intact, or an empty one if there is none
+    public static PoolSnapshot loadLatest(Path directory) throws IOException {
+        List<Path> snapshots = listSnapshots(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            try {
+                return read(path);
+            } catch (IOException e) {
+                System.err.printf("Skipping unreadable snapshot %s: %s%n", path.getFileName(), e.getMessage());
+            }
+        }
+        return empty();
+    }
+
+    private static PoolSnapshot read(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a ticket pool snapshot");
+            }
+            long journalLsn = in.readLong();
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("negative ticket count");
+            }
+            PoolSnapshot snapshot = new PoolSnapshot(journalLsn, size);
+            for (int i = 0; i < size; i++) {
+                snapshot.add(in.readInt(), in.readInt());
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+            return snapshot;
+        } catch (EOFException e) {
+            throw new IOException("snapshot is truncated", e);
+        }
+    }
+
+    // Deletes every snapshot older than the given LSN, and temporary files left by an interrupted write
+    public static void deleteOlderThan(Path directory, long journalLsn) throws IOException {
+        for (Path path : listSnapshots(directory)) {
+            if (snapshotLsn(path) < journalLsn) {
+                Files.deleteIfExists(path);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX + ".tmp")) {
+            for (Path temp : stream) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // Snapshot files in LSN order
+    private static List<Path> listSnapshots(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        }
+        snapshots.sort((first, second) -> Long.compare(snapshotLsn(first), snapshotLsn(second)));
+        return snapshots;
+    }
+
+    private static long snapshotLsn(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Outcome of TicketPool.removeTicket and holdTicket, failures share a single instance per reason
+public final class PurchaseResult {
+    public static final PurchaseResult NO_TICKETS_AVAILABLE = new PurchaseResult(null, "No tickets available.");
+
+    private final Ticket ticket;
+    private final String message;
+
+    private PurchaseResult(Ticket ticket, String message) {
+        this.ticket = ticket;
+        this.message = message;
+    }
+
+    public static PurchaseResult sold(Ticket ticket) {
+        return new PurchaseResult(ticket, null);
+    }
+
+    public boolean isSuccess() {
+        return ticket != null;
+    }
+
+    // The ticket that was sold or held, null on failure
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    // Reason for the failure, null on success
+    public String getMessage() {
+        return message;
+    }
+
+    // Map form with the keys removeTicket used to return, for callers that still expect it
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", isSuccess());
+        if (isSuccess()) {
+            result.put("ticket", ticket);
+        } else {
+            result.put("message", message);
+        }
+        return result;
+    }
+}
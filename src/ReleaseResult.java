@@ -0,0 +1,36 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Outcome of TicketPool.addTickets
+public final class ReleaseResult {
+    private final int added;
+    private final int notAdded;
+    private final boolean full;
+
+    public ReleaseResult(int added, int notAdded, boolean full) {
+        this.added = added;
+        this.notAdded = notAdded;
+        this.full = full;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getNotAdded() {
+        return notAdded;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    // Map form with the keys addTickets used to return, for callers that still expect it
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("added", added);
+        result.put("notAdded", notAdded);
+        result.put("isFull", full);
+        return result;
+    }
+}
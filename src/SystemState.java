@@ -0,0 +1,354 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.function.Function;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+// Exports the whole system, configuration, stats, users and tickets, to one JSON file and imports it into an empty data directory
+// The file is written and read as a stream: users are loaded from their files one at a time and tickets are written
+// straight from the recovered ticket arrays, so exporting a pool of millions of tickets never builds a list of them.
+// Run it while the ticketing system is stopped, the export reads the data directory the system would recover from.
+public class SystemState {
+    private static final int FORMAT_VERSION = 1;
+    private static final int NOT_SOLD = -1;
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !args[0].equals("export") && !args[0].equals("import")) {
+            System.err.println("Usage: SystemState export <file> | import <file>");
+            System.exit(1);
+            return;
+        }
+        Path file = Paths.get(args[1]);
+        Path directory = Paths.get(Constants.DATA_DIRECTORY);
+        try {
+            if (args[0].equals("export")) {
+                exportTo(file, directory);
+            } else {
+                importFrom(file, directory);
+            }
+        } catch (IOException | IllegalArgumentException | JsonParseException e) {
+            System.err.printf("Failed to %s %s: %s%n", args[0], file, e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Writes the configuration in config.json and everything in the data directory to the file
+    // Nothing is prompted for and the journal is only read, a damaged journal tail is left for recovery to repair
+    public static void exportTo(Path file, Path directory) throws IOException {
+        Configuration config = Configuration.readFile(Constants.CONFIG_FILE);
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        PoolSnapshot tickets = PoolPersistence.readState(directory, false);
+        UserStore<Vendor> vendorStore = UserStore.open(directory.resolve(Constants.VENDORS_FILE), Vendor.storeCodec(config, null));
+        UserStore<Customer> customerStore = null;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             JsonWriter writer = new JsonWriter(out)) {
+            customerStore = UserStore.open(directory.resolve(Constants.CUSTOMERS_FILE), Customer.storeCodec(config, null));
+            writer.beginObject();
+            writer.name("formatVersion").value(FORMAT_VERSION);
+            writer.name("configuration");
+            Utils.GSON.toJson(config, Configuration.class, writer);
+            writeStats(writer, tickets, vendorStore.size(), customerStore.size());
+            writer.name("vendors");
+            writeUsers(writer, vendorStore);
+            writer.name("customers");
+            writeUsers(writer, customerStore);
+            writer.name("tickets");
+            writeTickets(writer, tickets);
+            writer.endObject();
+        } finally {
+            vendorStore.close();
+            if (customerStore != null) {
+                customerStore.close();
+            }
+        }
+        System.out.printf("Exported %d vendors, %d customers and %d tickets to %s in %d ms%n", vendorStore.size(),
+                customerStore.size(), tickets.size(), file, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static void writeStats(JsonWriter writer, PoolSnapshot tickets, int vendors, int customers) throws IOException {
+        int sold = 0;
+        for (int ticketId = 1; ticketId <= tickets.size(); ticketId++) {
+            if (tickets.getBuyerId(ticketId) != NOT_SOLD) {
+                sold++;
+            }
+        }
+        writer.name("stats").beginObject();
+        writer.name("ticketsReleased").value(tickets.size());
+        writer.name("ticketsSold").value(sold);
+        writer.name("ticketsAvailable").value(tickets.size() - sold);
+        writer.name("vendors").value(vendors);
+        writer.name("customers").value(customers);
+        writer.endObject();
+    }
+
+    // Loads and writes one user at a time, only the user being written is in memory
+    private static <T extends User> void writeUsers(JsonWriter writer, UserStore<T> store) throws IOException {
+        writer.beginArray();
+        for (int id : store.getIds()) {
+            Utils.GSON.toJson(UserRecord.of(store.load(id)), UserRecord.class, writer);
+        }
+        writer.endArray();
+    }
+
+    // A ticket on sale or held at checkout is written without a buyer
+    private static void writeTickets(JsonWriter writer, PoolSnapshot tickets) throws IOException {
+        writer.beginArray();
+        for (int ticketId = 1; ticketId <= tickets.size(); ticketId++) {
+            writer.beginObject();
+            writer.name("id").value(ticketId);
+            writer.name("vendorId").value(tickets.getVendorId(ticketId));
+            int buyerId = tickets.getBuyerId(ticketId);
+            if (buyerId != NOT_SOLD) {
+                writer.name("buyerId").value(buyerId);
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    // Reads an exported file into the data directory and config.json, the data directory must not hold a system yet
+    // Users are added to their files as they are read and tickets go into a snapshot the next startup recovers from
+    public static void importFrom(Path file, Path directory) throws IOException {
+        requireEmpty(directory);
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        Configuration config = null;
+        PoolSnapshot tickets = null;
+        int ticketsReleased = 0;
+        int vendorCount = 0;
+        int customerCount = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "formatVersion":
+                        int version = reader.nextInt();
+                        if (version != FORMAT_VERSION) {
+                            throw new IllegalArgumentException("Unsupported format version " + version);
+                        }
+                        break;
+                    case "configuration":
+                        config = Utils.GSON.fromJson(reader, Configuration.class);
+                        if (config == null || !config.isValid()) {
+                            throw new IllegalArgumentException("The configuration in the file is invalid");
+                        }
+                        config.applyOptionalDefaults();
+                        break;
+                    case "stats":
+                        ticketsReleased = readTicketsReleased(reader);
+                        break;
+                    case "vendors":
+                        vendorCount = readUsers(reader, directory.resolve(Constants.VENDORS_FILE),
+                                Vendor.storeCodec(requireConfiguration(config), null), UserRecord::vendorSettings);
+                        break;
+                    case "customers":
+                        customerCount = readUsers(reader, directory.resolve(Constants.CUSTOMERS_FILE),
+                                Customer.storeCodec(requireConfiguration(config), null), UserRecord::customerSettings);
+                        break;
+                    case "tickets":
+                        tickets = readTickets(reader, ticketsReleased);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        requireConfiguration(config).saveConfiguration();
+        // Written last so a failed import never leaves tickets behind whose owners were not imported
+        if (tickets != null) {
+            tickets.write(directory);
+        }
+        System.out.printf("Imported %d vendors, %d customers and %d tickets from %s in %d ms%n", vendorCount,
+                customerCount, tickets == null ? 0 : tickets.size(), file, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static Configuration requireConfiguration(Configuration config) {
+        if (config == null) {
+            throw new IllegalArgumentException("The configuration must come before the users and tickets");
+        }
+        return config;
+    }
+
+    // Importing over an existing system would mix two pools' ticket IDs, so the directory must have no tickets or users
+    private static void requireEmpty(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            if (entries.iterator().hasNext()) {
+                throw new IllegalArgumentException(directory + " is not empty, move it aside before importing");
+            }
+        }
+    }
+
+    // Only the released ticket count is used, to size the ticket arrays up front
+    private static int readTicketsReleased(JsonReader reader) throws IOException {
+        int released = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("ticketsReleased")) {
+                released = Math.max(0, reader.nextInt());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return released;
+    }
+
+    // Adds each user to the file as it is read, the file is forced to disk once at the end
+    private static <T extends User> int readUsers(JsonReader reader, Path file, UserStore.Codec<T> codec,
+                                                  Function<UserRecord, int[]> settings) throws IOException {
+        UserStore<T> store = UserStore.open(file, codec);
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                UserRecord record = Utils.GSON.fromJson(reader, UserRecord.class);
+                T user = record.toUser(codec, settings.apply(record));
+                if (!store.addUnforced(user)) {
+                    throw new IllegalArgumentException("User " + record.id + " or their email appears twice");
+                }
+            }
+            reader.endArray();
+            store.force();
+            return store.size();
+        } finally {
+            store.close();
+        }
+    }
+
+    // Tickets must be in ticket ID order with no gaps, as the pool numbers them when they are released
+    private static PoolSnapshot readTickets(JsonReader reader, int expected) throws IOException {
+        PoolSnapshot tickets = new PoolSnapshot(0, expected);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int ticketId = 0;
+            int vendorId = 0;
+            int buyerId = NOT_SOLD;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        ticketId = reader.nextInt();
+                        break;
+                    case "vendorId":
+                        vendorId = reader.nextInt();
+                        break;
+                    case "buyerId":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            buyerId = reader.nextInt();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (ticketId != tickets.size() + 1) {
+                throw new IllegalArgumentException("Expected ticket " + (tickets.size() + 1) + " but found ticket " + ticketId);
+            }
+            if (vendorId <= 0 || buyerId != NOT_SOLD && buyerId <= 0) {
+                throw new IllegalArgumentException("Ticket " + ticketId + " has an invalid vendor or buyer");
+            }
+            tickets.add(vendorId, buyerId);
+        }
+        reader.endArray();
+        return tickets;
+    }
+
+    // One user as it appears in the file, settings the user's kind does not have are left out
+    private static class UserRecord {
+        private int id;
+        private String name;
+        private String email;
+        private String mobileNumber;
+        private PasswordRecord password;
+        private Integer ticketsPerRelease;
+        private Integer totalTicketsToRelease;
+        private Integer totalTicketsDesired;
+        private Integer purchaseBatchSize;
+        private BulkPurchaseMode bulkPurchaseMode;
+
+        static UserRecord of(User user) {
+            UserRecord record = new UserRecord();
+            record.id = user.getId();
+            record.name = user.getName();
+            record.email = user.getEmail();
+            record.mobileNumber = user.getMobileNumber();
+            PasswordHash passwordHash = user.getPasswordHash();
+            if (passwordHash != null) {
+                record.password = new PasswordRecord();
+                record.password.iterations = passwordHash.getIterations();
+                record.password.salt = Base64.getEncoder().encodeToString(passwordHash.getSalt());
+                record.password.hash = Base64.getEncoder().encodeToString(passwordHash.getHash());
+            }
+            if (user instanceof Vendor) {
+                Vendor vendor = (Vendor) user;
+                record.ticketsPerRelease = vendor.getTicketsPerRelease();
+                record.totalTicketsToRelease = vendor.getTotalTicketsToRelease();
+            } else if (user instanceof Customer) {
+                Customer customer = (Customer) user;
+                record.totalTicketsDesired = customer.getTotalTicketsDesired();
+                record.purchaseBatchSize = customer.getPurchaseBatchSize();
+                record.bulkPurchaseMode = customer.getBulkPurchaseMode();
+            }
+            return record;
+        }
+
+        // Settings in the same order as the codec of each kind keeps them in the user file
+        int[] vendorSettings() {
+            return new int[] {positive(ticketsPerRelease), positive(totalTicketsToRelease)};
+        }
+
+        int[] customerSettings() {
+            BulkPurchaseMode mode = bulkPurchaseMode == null ? BulkPurchaseMode.BEST_EFFORT : bulkPurchaseMode;
+            return new int[] {positive(totalTicketsDesired), positive(purchaseBatchSize), mode.ordinal()};
+        }
+
+        <T extends User> T toUser(UserStore.Codec<T> codec, int[] settings) {
+            if (id <= 0 || name == null || email == null || email.isEmpty() || mobileNumber == null) {
+                throw new IllegalArgumentException("User " + id + " is missing an ID, name, email or mobile number");
+            }
+            T user = codec.create(id, name, email, mobileNumber, settings);
+            if (password != null) {
+                if (password.iterations <= 0 || password.salt == null || password.hash == null) {
+                    throw new IllegalArgumentException("User " + id + " has an incomplete password hash");
+                }
+                user.setPasswordHash(new PasswordHash(Base64.getDecoder().decode(password.salt),
+                        Base64.getDecoder().decode(password.hash), password.iterations));
+            }
+            return user;
+        }
+
+        private int positive(Integer setting) {
+            if (setting == null || setting <= 0) {
+                throw new IllegalArgumentException("User " + id + " is missing a setting of their kind");
+            }
+            return setting;
+        }
+    }
+
+    private static class PasswordRecord {
+        private int iterations;
+        private String salt; // Base64
+        private String hash; // Base64
+    }
+}
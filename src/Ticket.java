@@ -1,39 +1,153 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public class Ticket {
+    private static final VarHandle STATE;
+    private static final TicketStatus[] STATUSES = TicketStatus.values();
+    static final int HOLD_STAMP_MASK = 0xFFFFFF;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Ticket.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final int id;
-    private TicketStatus status;
     private final int vendorId;
-    private int ownerId; // -1 if no owner
+    // Status ordinal in the top 8 bits, a hold stamp in the next 24 bits and owner ID in the low 32 bits (-1 if no owner)
+    // They change together in a single compare-and-set, so a read never sees one without the others
+    // The hold stamp tells one hold apart from a later hold of the same ticket by the same customer
+    private volatile long state;
+    // When set, the state lives in the ticket's record in the mapped table and the field above is unused
+    private final MappedTicketTable table;
 
     public Ticket(int id, TicketStatus status, int vendorId) {
         this.id = id;
-        this.status = status;
         this.vendorId = vendorId;
-        this.ownerId = -1;
+        this.state = pack(status, 0, -1);
+        this.table = null;
+    }
+
+    // A view of a ticket stored in a mapped table, any number of views of the same ticket can exist at once
+    Ticket(int id, int vendorId, MappedTicketTable table) {
+        this.id = id;
+        this.vendorId = vendorId;
+        this.table = table;
+    }
 
+    // State of a newly released ticket
+    static long availableState() {
+        return pack(TicketStatus.AVAILABLE, -1);
     }
 
-    public synchronized int getId() {
-        return id;
+    // State of a recovered ticket, sold to the buyer or on sale if buyerId is -1
+    static long recoveredState(int buyerId) {
+        return buyerId >= 0 ? pack(TicketStatus.SOLD, buyerId) : availableState();
+    }
+
+    // The buyer recorded in a state, -1 if the state is not SOLD or SELLING
+    static int buyerOf(long state) {
+        TicketStatus status = statusOf(state);
+        return status == TicketStatus.SOLD || status == TicketStatus.SELLING ? ownerOf(state) : -1;
+    }
+
+    private long readState() {
+        return table == null ? state : table.getState(id);
+    }
+
+    private boolean compareAndSetState(long expected, long updated) {
+        return table == null ? STATE.compareAndSet(this, expected, updated) : table.compareAndSetState(id, expected, updated);
+    }
+
+    private static long pack(TicketStatus status, int holdStamp, int ownerId) {
+        return ((long) status.ordinal() << 56) | ((long) (holdStamp & HOLD_STAMP_MASK) << 32) | (ownerId & 0xFFFFFFFFL);
+    }
+
+    private static long pack(TicketStatus status, int ownerId) {
+        return pack(status, 0, ownerId);
     }
 
-    public synchronized TicketStatus getStatus() {
-        return status;
+    private static TicketStatus statusOf(long state) {
+        return STATUSES[(int) (state >>> 56)];
     }
 
-    public synchronized void setStatus(TicketStatus status) {
-        this.status = status;
+    private static int ownerOf(long state) {
+        return (int) state;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public TicketStatus getStatus() {
+        return statusOf(readState());
     }
 
     public int getVendorId() {
         return vendorId;
     }
 
-    public synchronized int getOwnerId() {
-        return ownerId;
+    public int getOwnerId() {
+        return ownerOf(readState());
+    }
+
+    // The customer the ticket is sold to, or -1 if it is not sold, read together with the status
+    public int getBuyerId() {
+        return buyerOf(readState());
+    }
+
+    // Checks status and owner from the same read
+    public boolean isSoldTo(int customerId) {
+        return buyerOf(readState()) == customerId;
+    }
+
+    // AVAILABLE -> SELLING to the customer, fails if the ticket is not available
+    public boolean trySell(int customerId) {
+        return compareAndSetState(pack(TicketStatus.AVAILABLE, -1), pack(TicketStatus.SELLING, customerId));
+    }
+
+    // SELLING to the customer -> SOLD, once the sale is journaled and in the owner index
+    public boolean completeSale(int customerId) {
+        return compareAndSetState(pack(TicketStatus.SELLING, customerId), pack(TicketStatus.SOLD, customerId));
+    }
+
+    // SOLD to the customer -> AVAILABLE, fails if the customer does not own the ticket
+    // Waits out a sale to the customer that is still being recorded, so a refund is never journaled before its sale
+    public boolean tryRefund(int customerId) {
+        long current;
+        while ((current = readState()) == pack(TicketStatus.SELLING, customerId)) {
+            Thread.onSpinWait();
+        }
+        return current == pack(TicketStatus.SOLD, customerId) && compareAndSetState(current, pack(TicketStatus.AVAILABLE, -1));
     }
 
-    public synchronized void setOwnerId(int ownerId) {
-        this.ownerId = ownerId;
+    // AVAILABLE -> HELD for the customer, the stamp identifies this particular hold
+    public boolean tryHold(int customerId, int holdStamp) {
+        return compareAndSetState(pack(TicketStatus.AVAILABLE, -1), pack(TicketStatus.HELD, holdStamp, customerId));
     }
 
+    // HELD for the customer -> SELLING to them, fails if the hold has expired or been released
+    public boolean tryConfirmHold(int customerId) {
+        long current = readState();
+        if (statusOf(current) != TicketStatus.HELD || ownerOf(current) != customerId) {
+            return false;
+        }
+        return compareAndSetState(current, pack(TicketStatus.SELLING, customerId));
+    }
+
+    // HELD for the customer -> AVAILABLE, when the customer abandons the checkout
+    public boolean tryReleaseHold(int customerId) {
+        long current = readState();
+        if (statusOf(current) != TicketStatus.HELD || ownerOf(current) != customerId) {
+            return false;
+        }
+        return compareAndSetState(current, pack(TicketStatus.AVAILABLE, -1));
+    }
+
+    // HELD under exactly this hold -> AVAILABLE, a stale expiry never cancels a newer hold
+    public boolean tryExpireHold(int customerId, int holdStamp) {
+        return compareAndSetState(pack(TicketStatus.HELD, holdStamp, customerId), pack(TicketStatus.AVAILABLE, -1));
+    }
 }
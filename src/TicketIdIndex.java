@@ -0,0 +1,93 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ticket IDs grouped by an int key, a vendor ID or an owner ID, kept as primitive int lists
+// The keys are split over stripes, each with its own lock and open addressing map, so updates for different
+// vendors or customers rarely wait on each other. Readers get a copy of the IDs taken under the stripe lock.
+class TicketIdIndex {
+    private static final int STRIPES = 64; // Power of two
+    private static final int[] NO_IDS = new int[0];
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    TicketIdIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final IntObjectHashMap<IntArrayList> ticketIds = new IntObjectHashMap<>();
+    }
+
+    private Stripe stripeFor(int key) {
+        int h = key * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    void add(int key, int ticketId) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.ticketIds.computeIfAbsent(key, id -> new IntArrayList()).add(ticketId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Adds count consecutive ticket IDs starting at firstTicketId, as handed out by one release
+    void addRange(int key, int firstTicketId, int count) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.ticketIds.computeIfAbsent(key, id -> new IntArrayList()).addRange(firstTicketId, count);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    void addAll(int key, int[] ticketIds) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.ticketIds.computeIfAbsent(key, id -> new IntArrayList(ticketIds.length)).addAll(ticketIds);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    boolean remove(int key, int ticketId) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            IntArrayList ids = stripe.ticketIds.get(key);
+            return ids != null && ids.removeValue(ticketId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Number of ticket IDs under the key, without copying them
+    int count(int key) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            IntArrayList ids = stripe.ticketIds.get(key);
+            return ids == null ? 0 : ids.size();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Copy of the ticket IDs under the key, in the order they were added unless some were removed
+    int[] get(int key) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            IntArrayList ids = stripe.ticketIds.get(key);
+            return ids == null || ids.isEmpty() ? NO_IDS : ids.toArray();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Append-only binary journal of ticket releases, sales and refunds
+// Records are fixed size and numbered by a log sequence number (LSN). Producers copy them into a shared buffer
+// and a single writer thread swaps the buffer out and writes it with one system call, so many records share one fsync.
+// The journal is split into segment files named after the LSN of their first record, a snapshot rotates to a
+// new segment so the segments it covers can be deleted.
+public class TicketJournal {
+    static final byte RELEASE = 1; // vendorId, first ticket ID, count
+    static final byte SALE = 2; // customerId, ticket ID
+    static final byte REFUND = 3; // customerId, ticket ID
+    static final int RECORD_SIZE = 17; // type, three ints and a CRC32C of the rest
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final Path directory;
+    private final JournalSyncMode syncMode;
+    private final long syncIntervalNanos;
+    private final int syncBatch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recordsAppended = lock.newCondition(); // The writer waits on this
+    private final Condition bufferDrained = lock.newCondition(); // Producers wait on this when the buffer is full
+    private final Condition recordsSynced = lock.newCondition(); // COMMIT producers and rotations wait on this
+    private final CRC32C checksum = new CRC32C(); // Guarded by lock
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE); // Guarded by lock
+    private ByteBuffer flushing = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE); // Only touched by the writer
+    private long nextLsn; // Guarded by lock
+    private volatile long syncedLsn; // Every record below this LSN is on disk
+    private boolean rotationRequested; // Guarded by lock
+    private long rotations; // Guarded by lock
+    private long lastRotationLsn; // Guarded by lock
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private volatile LatencyHistogram syncLatency;
+    private FileChannel channel; // Only touched by the writer after construction
+    private final Thread writer;
+
+    // Opens a new segment starting at nextLsn, which must be the LSN after the last recovered record
+    public TicketJournal(Path directory, long nextLsn, JournalSyncMode syncMode, long syncIntervalMillis, int syncBatch)
+            throws IOException {
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.syncBatch = syncBatch;
+        this.nextLsn = nextLsn;
+        this.syncedLsn = nextLsn;
+        this.channel = openSegment(nextLsn);
+        this.writer = new Thread(this::writeLoop, "ticket-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private FileChannel openSegment(long startLsn) throws IOException {
+        return FileChannel.open(segmentPath(directory, startLsn),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    static Path segmentPath(Path directory, long startLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, startLsn, SEGMENT_SUFFIX));
+    }
+
+    // Reports fsync latency and record counts
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("journal.records", this::getNextLsn);
+        registry.gauge("journal.unsyncedRecords", () -> getNextLsn() - syncedLsn);
+        this.syncLatency = registry.histogram("journal.fsync");
+    }
+
+    public long appendRelease(int vendorId, int firstTicketId, int count) {
+        return append(RELEASE, vendorId, firstTicketId, count);
+    }
+
+    public long appendSale(int customerId, int ticketId) {
+        return append(SALE, customerId, ticketId, 0);
+    }
+
+    // Journals every ticket of a bulk sale, returns the LSN of the last record
+    public long appendSales(int customerId, int[] ticketIds) {
+        long lsn = -1;
+        for (int ticketId : ticketIds) {
+            lsn = append(SALE, customerId, ticketId, 0);
+        }
+        return lsn;
+    }
+
+    public long appendRefund(int customerId, int ticketId) {
+        return append(REFUND, customerId, ticketId, 0);
+    }
+
+    // Copies the record into the shared buffer and returns its LSN, waits only if the buffer is full
+    private long append(byte type, int a, int b, int c) {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The ticket journal is closed.");
+            }
+            while (active.remaining() < RECORD_SIZE && failure == null) {
+                bufferDrained.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                return -1; // The writer has failed, the error was reported when it happened
+            }
+            int start = active.position();
+            active.put(type).putInt(a).putInt(b).putInt(c);
+            checksum.reset();
+            checksum.update(active.array(), start, RECORD_SIZE - 4);
+            active.putInt((int) checksum.getValue());
+            recordsAppended.signal();
+            return nextLsn++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // In COMMIT mode waits until the record is on disk, in INTERVAL mode returns straight away
+    // The wait cannot be interrupted, an interrupt is kept for the caller to see
+    public void awaitDurable(long lsn) {
+        if (syncMode != JournalSyncMode.COMMIT || lsn < syncedLsn) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (lsn >= syncedLsn && failure == null && running) {
+                recordsSynced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces everything appended so far to disk and starts a new segment
+    // Returns the LSN the new segment starts at, every earlier record is in an older segment
+    public long rotate() throws IOException {
+        lock.lock();
+        try {
+            long before = rotations;
+            rotationRequested = true;
+            recordsAppended.signal();
+            while (rotations == before && failure == null && running) {
+                recordsSynced.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (rotations == before) {
+                throw new IllegalStateException("The ticket journal is closed.");
+            }
+            return lastRotationLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Deletes the segments that only hold records below the LSN, used once a snapshot covers them
+    public void deleteSegmentsBefore(long lsn) throws IOException {
+        for (Path segment : listSegments(directory)) {
+            if (segmentStart(segment) < lsn) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    public long getNextLsn() {
+        lock.lock();
+        try {
+            return nextLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes and forces everything still buffered, then stops the writer
+    public void close() {
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            recordsAppended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        long lastSync = System.nanoTime();
+        long unsynced = 0; // Records written since the last fsync
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchEnd;
+                boolean rotate;
+                lock.lock();
+                try {
+                    boolean due = false;
+                    while (active.position() == 0 && !rotationRequested && !due) {
+                        if (!running) {
+                            if (unsynced == 0) {
+                                return;
+                            }
+                            break;
+                        }
+                        if (syncMode == JournalSyncMode.INTERVAL && unsynced > 0) {
+                            long remaining = lastSync + syncIntervalNanos - System.nanoTime();
+                            due = remaining <= 0 || recordsAppended.awaitNanos(remaining) <= 0;
+                        } else {
+                            recordsAppended.await();
+                        }
+                    }
+                    batch = active;
+                    active = flushing;
+                    flushing = batch;
+                    batchEnd = nextLsn;
+                    rotate = rotationRequested;
+                    bufferDrained.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                unsynced += batch.position() / RECORD_SIZE;
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                batch.clear();
+
+                long now = System.nanoTime();
+                boolean sync = syncMode == JournalSyncMode.COMMIT || rotate || !running
+                        || unsynced >= syncBatch || now - lastSync >= syncIntervalNanos;
+                if (sync && unsynced > 0) {
+                    channel.force(false);
+                    LatencyHistogram histogram = syncLatency;
+                    if (histogram != null) {
+                        histogram.record(System.nanoTime() - now);
+                    }
+                    lastSync = System.nanoTime();
+                    unsynced = 0;
+                }
+                if (rotate) {
+                    channel.close();
+                    channel = openSegment(batchEnd);
+                }
+
+                lock.lock();
+                try {
+                    if (unsynced == 0) {
+                        syncedLsn = batchEnd;
+                    }
+                    if (rotate) {
+                        rotationRequested = false;
+                        lastRotationLsn = batchEnd;
+                        rotations++;
+                    }
+                    recordsSynced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close the ticket journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Stops journaling after a write error, waiting producers are released so ticket sales carry on
+    private void fail(IOException e) {
+        System.err.println("Ticket journal write failed, sales are no longer being journaled: " + e.getMessage());
+        lock.lock();
+        try {
+            failure = e;
+            bufferDrained.signalAll();
+            recordsSynced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Receives journal records during recovery
+    interface RecordHandler {
+        void apply(byte type, int a, int b, int c);
+    }
+
+    // Replays every record from fromLsn onwards, in LSN order, returns the LSN after the last valid record
+    // A torn or corrupt record ends the replay: the segment is cut back to the last valid record and later segments
+    // are removed, so the next segment continues from a clean end
+    // Fails if the first segment starts after fromLsn, the records in between are lost and the state cannot be rebuilt
+    static long replay(Path directory, long fromLsn, RecordHandler handler) throws IOException {
+        return replay(directory, fromLsn, handler, true);
+    }
+
+    // Like replay, but the journal is only read: replay stops at a gap or at the first torn or corrupt record and
+    // leaves every segment as it is. For reading the journal of a system that may still be writing to it.
+    static long replayReadOnly(Path directory, long fromLsn, RecordHandler handler) throws IOException {
+        return replay(directory, fromLsn, handler, false);
+    }
+
+    private static long replay(Path directory, long fromLsn, RecordHandler handler, boolean repair) throws IOException {
+        List<Path> segments = listSegments(directory);
+        long expected = fromLsn; // Start of the next segment if the journal has no gaps
+        boolean first = true;
+        long lsn = fromLsn;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            long start = segmentStart(segment);
+            if (i + 1 < segments.size() && segmentStart(segments.get(i + 1)) <= fromLsn) {
+                continue; // Every record in this segment is already in the snapshot
+            }
+            if (first && start > expected) {
+                throw new IOException(String.format("Ticket journal starts at LSN %d but the snapshot ends at LSN %d, "
+                        + "the records in between are missing", start, fromLsn));
+            }
+            if (!first && start != expected) {
+                System.err.printf("Ticket journal has a gap before %s, later records are ignored.%n", segment.getFileName());
+                if (repair) {
+                    removeSegments(segments.subList(i, segments.size()));
+                }
+                return lsn;
+            }
+            long segmentLsn = start;
+            long validBytes = 0;
+            try (FileChannel channel = repair
+                    ? FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(segment, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+                boolean corrupt = false;
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RECORD_SIZE) {
+                        record.clear();
+                        buffer.get(record.array());
+                        crc.reset();
+                        crc.update(record.array(), 0, RECORD_SIZE - 4);
+                        if ((int) crc.getValue() != record.getInt(RECORD_SIZE - 4)) {
+                            corrupt = true;
+                            break;
+                        }
+                        if (segmentLsn >= fromLsn) {
+                            handler.apply(record.get(0), record.getInt(1), record.getInt(5), record.getInt(9));
+                        }
+                        segmentLsn++;
+                        validBytes += RECORD_SIZE;
+                    }
+                    if (corrupt) {
+                        break;
+                    }
+                    buffer.compact();
+                }
+                if (corrupt || validBytes < channel.size()) {
+                    // A torn write at the end of the journal, or a damaged record
+                    lsn = Math.max(lsn, segmentLsn);
+                    if (i + 1 < segments.size()) {
+                        System.err.printf("Ticket journal segment %s is damaged, later records are ignored.%n", segment.getFileName());
+                    }
+                    if (repair) {
+                        channel.truncate(validBytes);
+                        removeSegments(segments.subList(i + 1, segments.size()));
+                    }
+                    return lsn;
+                }
+            }
+            lsn = Math.max(lsn, segmentLsn);
+            expected = segmentLsn;
+            first = false;
+        }
+        return lsn;
+    }
+
+    private static void removeSegments(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    // Segment files in LSN order
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        segments.sort((first, second) -> Long.compare(segmentStart(first), segmentStart(second)));
+        return segments;
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
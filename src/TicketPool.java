@@ -1,37 +1,95 @@
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TicketPool {
     private static TicketPool instance;
-    private final List<Ticket> tickets;
-    private final int maxCapacity;
+    private final TicketStore tickets; // Also serves as the ticket ID index
+    private final TicketIdIndex ticketIdsByVendor; // Append-only, in release order
+    private final TicketIdIndex ticketIdsByOwner; // Updated on every sale and refund
+    private final TicketShard[] shards; // Available tickets split into stripes, each with its own lock
+    // Tickets in the shards that no seller has claimed yet, a sale reserves from this count before taking a ticket
+    private final AtomicInteger availableCount;
+    private final ReentrantLock releaseLock = new ReentrantLock(); // Keeps ticket IDs in store order while vendors release
+    private final LongAdder releaseLockContention = new LongAdder();
+    // Customers waiting for tickets park on this condition, each released ticket wakes at most one of them
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition ticketsReleased = waitLock.newCondition();
+    private final AtomicInteger waitingCustomers = new AtomicInteger(0);
+    // Vendors waiting for room in a full pool, each sold ticket wakes at most one of them
+    private final Queue<CapacityWaiter> capacityWaiters = new ConcurrentLinkedQueue<>();
+    private volatile int maxCapacity; // Read under the release lock when releasing, changed by setMaxCapacity
     private final AtomicInteger ticketIdCounter;
     private final AtomicInteger totalTicketsReleased;
     private final AtomicInteger totalTicketsSold;
+    // Tickets held for a checkout, they are out of the shards but still count against the pool capacity
+    private final AtomicInteger totalTicketsHeld = new AtomicInteger(0);
+    private final AtomicInteger holdStampCounter = new AtomicInteger(0);
+    private final HoldExpiryWheel holdExpiry;
+    private volatile PoolMetrics metrics; // Nothing is timed or counted until registerMetrics is called
+    private volatile TicketJournal journal; // Releases, sales and refunds are only journaled once enableJournal is called
 
     // Private constructor to prevent direct instantiation
-    private TicketPool(int maxCapacity) {
+    private TicketPool(int maxCapacity, int shardCount, MappedTicketTable table) {
         this.maxCapacity = maxCapacity;
-        this.tickets = new CopyOnWriteArrayList<>();
+        this.tickets = new TicketStore(maxCapacity, table);
+        this.ticketIdsByVendor = new TicketIdIndex();
+        this.ticketIdsByOwner = new TicketIdIndex();
+        this.shards = new TicketShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new TicketShard();
+        }
+        this.availableCount = new AtomicInteger(0);
         this.ticketIdCounter = new AtomicInteger(1);
         this.totalTicketsReleased = new AtomicInteger(0);
         this.totalTicketsSold = new AtomicInteger(0);
+        this.holdExpiry = new HoldExpiryWheel(Constants.HOLD_WHEEL_TICK, Constants.HOLD_WHEEL_SIZE, this::expireHolds);
     }
 
     // Initializes the TicketPool singleton with the specified parameters
     // This method should be called once at the start of the application
     public static synchronized TicketPool initialize(int maxCapacity, double ticketPrice) {
+        return initialize(maxCapacity, ticketPrice, 1);
+    }
+
+    // Initializes the TicketPool singleton split into the given number of shards
+    public static synchronized TicketPool initialize(int maxCapacity, double ticketPrice, int shardCount) {
+        return initialize(maxCapacity, ticketPrice, shardCount, null);
+    }
+
+    // Initializes the TicketPool singleton with its tickets kept in a mapped table, or on the heap if table is null
+    public static synchronized TicketPool initialize(int maxCapacity, double ticketPrice, int shardCount,
+                                                     MappedTicketTable table) {
         if (instance != null) {
             throw new IllegalStateException("TicketPool is already initialized.");
         }
-        instance = new TicketPool(maxCapacity);
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("TicketPool needs at least one shard.");
+        }
+        instance = new TicketPool(maxCapacity, shardCount, table);
         return instance;
     }
 
+    // Creates a pool that is not the shared instance, the benchmarks use a fresh one for every measurement
+    static TicketPool createStandalone(int maxCapacity, int shardCount) {
+        return createStandalone(maxCapacity, shardCount, null);
+    }
+
+    static TicketPool createStandalone(int maxCapacity, int shardCount, MappedTicketTable table) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("TicketPool needs at least one shard.");
+        }
+        return new TicketPool(maxCapacity, shardCount, table);
+    }
+
     // Retrieves the already initialized TicketPool instance
     public static synchronized TicketPool getInstance() {
         if (instance == null) {
@@ -40,94 +98,665 @@ public class TicketPool {
         return instance;
     }
 
-    // Adds tickets to the pool
-    public synchronized Map<String, Object> addTickets(int count, int vendorId) {
-        int added = 0;
-        int notAdded = 0;
-        boolean isFull = false;
+    // Vendors release into and customers first buy from the shard picked by their ID
+    private int homeShard(int userId) {
+        return Math.floorMod(userId, shards.length);
+    }
 
-        for (int i = 0; i < count; i++) {
-            if (tickets.size() >= maxCapacity) {
-                notAdded = count - i;
-                isFull = true;
-                break;
+    // Unsold tickets in the pool, held tickets included
+    private int unsoldTickets() {
+        return availableCount.get() + totalTicketsHeld.get();
+    }
+
+    // Starts recording call latencies, lock waits and per-actor throughput into the registry
+    // Purchase latencies include any time spent waiting for tickets in an empty pool
+    public void registerMetrics(MetricsRegistry registry) {
+        PoolMetrics poolMetrics = new PoolMetrics(registry);
+        for (TicketShard shard : shards) {
+            shard.recordLockWait(poolMetrics.lockWait);
+        }
+        registry.gauge("pool.ticketsReleased", this::getTotalTicketsReleased);
+        registry.gauge("pool.ticketsSold", this::getTotalTicketsSold);
+        registry.gauge("pool.ticketsAvailable", this::getAvailableTickets);
+        registry.gauge("pool.ticketsHeld", this::getTicketsHeld);
+        registry.gauge("pool.waitingCustomers", waitingCustomers::get);
+        registry.gauge("pool.shardLockContention", this::getShardLockContention);
+        registry.gauge("pool.releaseLockContention", this::getReleaseLockContention);
+        this.metrics = poolMetrics;
+    }
+
+    // Start time for a timed call, 0 when metrics are not being recorded
+    private static long startTiming(PoolMetrics poolMetrics) {
+        return poolMetrics == null ? 0 : System.nanoTime();
+    }
+
+    // Journals every release, sale and refund from now on
+    // Each call returns only once its record is as durable as the journal's sync mode promises
+    public void enableJournal(TicketJournal ticketJournal) {
+        this.journal = ticketJournal;
+    }
+
+    // Rebuilds the pool from a recovered snapshot, called before any vendor or customer starts
+    // A mapped ticket table is rewritten from the snapshot, recovery only does that when the snapshot is the newer of the two
+    public void restore(PoolSnapshot snapshot) {
+        releaseLock.lock();
+        try {
+            if (totalTicketsReleased.get() > 0) {
+                throw new IllegalStateException("Tickets can only be restored into an empty pool.");
+            }
+            tickets.clear();
+            int sold = 0;
+            for (int ticketId = 1; ticketId <= snapshot.size(); ticketId++) {
+                int vendorId = snapshot.getVendorId(ticketId);
+                Ticket ticket = tickets.append(ticketId, vendorId);
+                ticketIdsByVendor.add(vendorId, ticketId);
+                int buyerId = snapshot.getBuyerId(ticketId);
+                if (buyerId >= 0) {
+                    markSold(ticket, buyerId);
+                    ticketIdsByOwner.add(buyerId, ticketId);
+                    completeSale(ticket, buyerId);
+                    sold++;
+                } else {
+                    shards[homeShard(vendorId)].offer(ticketId);
+                }
             }
-            Ticket ticket = new Ticket(ticketIdCounter.getAndIncrement(), TicketStatus.AVAILABLE, vendorId);
-            tickets.add(ticket);
-            added++;
-            totalTicketsReleased.incrementAndGet();
+            ticketIdCounter.set(snapshot.size() + 1);
+            totalTicketsReleased.set(snapshot.size());
+            totalTicketsSold.set(sold);
+            availableCount.set(snapshot.size() - sold);
+        } finally {
+            releaseLock.unlock();
         }
+    }
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("added", added);
-        result.put("notAdded", notAdded);
-        result.put("isFull", isFull);
-        return result;
+    // Rebuilds the shards and indexes from the tickets already in the mapped table, without rewriting the table
+    // Recovery has brought the table up to date with the journal, tickets held when the last run stopped go back on sale
+    public void restoreFromTable() {
+        MappedTicketTable table = tickets.getTable();
+        if (table == null) {
+            throw new IllegalStateException("The tickets are not kept in a mapped table.");
+        }
+        releaseLock.lock();
+        try {
+            if (totalTicketsReleased.get() > 0) {
+                throw new IllegalStateException("Tickets can only be restored into an empty pool.");
+            }
+            int size = table.size();
+            int sold = 0;
+            for (int ticketId = 1; ticketId <= size; ticketId++) {
+                int vendorId = table.getVendorId(ticketId);
+                ticketIdsByVendor.add(vendorId, ticketId);
+                long state = table.getState(ticketId);
+                int buyerId = Ticket.buyerOf(state);
+                if (buyerId >= 0) {
+                    if (state != Ticket.recoveredState(buyerId)) {
+                        table.setState(ticketId, Ticket.recoveredState(buyerId)); // A sale the last run had not finished
+                    }
+                    ticketIdsByOwner.add(buyerId, ticketId);
+                    sold++;
+                } else {
+                    if (state != Ticket.availableState()) {
+                        table.setState(ticketId, Ticket.availableState()); // A hold is never durable
+                    }
+                    shards[homeShard(vendorId)].offer(ticketId);
+                }
+            }
+            ticketIdCounter.set(size + 1);
+            totalTicketsReleased.set(size);
+            totalTicketsSold.set(sold);
+            availableCount.set(size - sold);
+        } finally {
+            releaseLock.unlock();
+        }
     }
 
-    // Removes (sells) a ticket to a customer
-    public synchronized Map<String, Object> removeTicket(int customerId) {
-        Map<String, Object> result = new HashMap<>();
+    // Copies every ticket's vendor and buyer into a snapshot taken at the given journal LSN
+    // Sales carry on during the copy, replaying the journal from the LSN puts right any ticket that changed meanwhile
+    // Held tickets are copied as on sale, a hold only becomes durable once it is confirmed
+    PoolSnapshot captureSnapshot(long journalLsn) {
+        PoolSnapshot snapshot = new PoolSnapshot(journalLsn, tickets.size());
         for (Ticket ticket : tickets) {
-            synchronized (ticket) {
-                if (ticket.getStatus() == TicketStatus.AVAILABLE) {
-                    ticket.setStatus(TicketStatus.SOLD);
-                    ticket.setOwnerId(customerId);
-                    totalTicketsSold.incrementAndGet();
-                    result.put("success", true);
-                    result.put("ticket", ticket);
-
-                    // Logging using Utils
-                    Utils.addLog(String.format("Customer-%d purchased Ticket ID %d. Tickets left: %d",
-                            customerId, ticket.getId(), getAvailableTickets()));
-                    return result;
-                }
+            snapshot.add(ticket.getVendorId(), ticket.getBuyerId());
+        }
+        return snapshot;
+    }
+
+    // The mapped table holding the tickets, null when they are kept on the heap
+    MappedTicketTable getTicketTable() {
+        return tickets.getTable();
+    }
+
+    // Waits until a journal record is on disk, nothing to wait for when the pool is not journaled
+    private static void awaitDurable(TicketJournal poolJournal, long lsn) {
+        if (poolJournal != null && lsn >= 0) {
+            poolJournal.awaitDurable(lsn);
+        }
+    }
+
+    // Adds tickets to the pool, at most maxCapacity unsold tickets can be in the pool at once
+    public ReleaseResult addTickets(int count, int vendorId) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Number of tickets to release must be positive.");
+        }
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        ReleaseResult result = releaseTickets(count, vendorId);
+        if (poolMetrics != null) {
+            poolMetrics.addTickets.record(System.nanoTime() - started);
+            if (result.getAdded() > 0) {
+                poolMetrics.vendorReleases.record(vendorId, result.getAdded());
+            }
+            if (result.isFull()) {
+                poolMetrics.releasesRejected.increment();
             }
         }
-        result.put("success", false);
-        result.put("message", "No tickets available.");
-        Utils.addLog("Customer-" + customerId + " could not purchase a ticket (No tickets available).");
         return result;
     }
 
-    // Refunds a ticket previously purchased by a customer
-    public synchronized boolean refundTicket(int customerId, int ticketId) {
-        for (Ticket ticket : tickets) {
-            if (ticket.getId() == ticketId && ticket.getOwnerId() == customerId && ticket.getStatus() == TicketStatus.SOLD) {
-                synchronized (ticket) {
-                    ticket.setStatus(TicketStatus.AVAILABLE);
-                    ticket.setOwnerId(-1);
-                    totalTicketsSold.decrementAndGet();
-                    Utils.addLog(String.format("Customer-%d refunded Ticket ID %d.", customerId, ticketId));
-                    return true;
+    private ReleaseResult releaseTickets(int count, int vendorId) {
+        int added = 0;
+        TicketJournal poolJournal = journal;
+        long lsn = -1;
+        lockForRelease();
+        try {
+            int room = maxCapacity - unsoldTickets();
+            int firstTicketId = ticketIdCounter.get();
+            while (added < count && added < room) {
+                tickets.append(ticketIdCounter.getAndIncrement(), vendorId);
+                added++;
+            }
+            if (added > 0) {
+                ticketIdsByVendor.addRange(vendorId, firstTicketId, added);
+                // Journal the release before any customer can buy one of its tickets
+                // The lock keeps release records in ticket ID order
+                if (poolJournal != null) {
+                    lsn = poolJournal.appendRelease(vendorId, firstTicketId, added);
+                }
+                // Publish the ticket IDs to the shard before making them claimable
+                // Both happen under the release lock so the next vendor sees the room they took
+                shards[homeShard(vendorId)].offerRange(firstTicketId, added);
+                totalTicketsReleased.addAndGet(added);
+                availableCount.addAndGet(added);
+            }
+        } finally {
+            releaseLock.unlock();
+        }
+        int notAdded = count - added;
+        boolean isFull = notAdded > 0;
+
+        if (added > 0) {
+            signalWaitingCustomers(added);
+        }
+        awaitDurable(poolJournal, lsn);
+
+        return new ReleaseResult(added, notAdded, isFull);
+    }
+
+    // Counts and times the release lock acquisitions that had to wait for another vendor
+    private void lockForRelease() {
+        if (releaseLock.tryLock()) {
+            return;
+        }
+        releaseLockContention.increment();
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        releaseLock.lock();
+        if (poolMetrics != null) {
+            poolMetrics.lockWait.record(System.nanoTime() - started);
+        }
+    }
+
+    // Wakes up to count waiting customers, one per ticket that became available
+    private void signalWaitingCustomers(int count) {
+        // Read after the tickets were made claimable, a customer that registers later will see them
+        if (waitingCustomers.get() == 0) {
+            return;
+        }
+        waitLock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                ticketsReleased.signal();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    // Claims between one and count tickets, waiting up to the timeout for the first one to be released
+    // Returns how many were claimed, 0 if the timeout passed with the pool still empty
+    private int reserveAvailableWaiting(int count, long timeoutMillis) throws InterruptedException {
+        int claimed = reserveAvailable(count, false);
+        if (claimed > 0 || timeoutMillis <= 0) {
+            return claimed;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        waitLock.lock();
+        waitingCustomers.incrementAndGet();
+        try {
+            while ((claimed = reserveAvailable(count, false)) == 0) {
+                if (remaining <= 0) {
+                    return 0;
                 }
+                remaining = ticketsReleased.awaitNanos(remaining);
             }
+            return claimed;
+        } finally {
+            waitingCustomers.decrementAndGet();
+            waitLock.unlock();
         }
-        return false;
     }
 
-    // Retrieves all tickets released by a specific vendor
-    public synchronized List<Ticket> getTicketsByVendor(int vendorId) {
-        List<Ticket> vendorTickets = new ArrayList<>();
-        for (Ticket ticket : tickets) {
-            if (ticket.getVendorId() == vendorId) {
-                vendorTickets.add(ticket);
+    // Changes how many unsold tickets the pool can hold while vendors and customers keep running
+    // Raising it wakes vendors waiting for room. Lowering it never removes tickets, releases are turned away
+    // until sales bring the pool under the new capacity.
+    public void setMaxCapacity(int maxCapacity) {
+        if (maxCapacity <= 0) {
+            throw new IllegalArgumentException("The pool capacity must be positive.");
+        }
+        int room;
+        releaseLock.lock();
+        try {
+            this.maxCapacity = maxCapacity;
+            room = maxCapacity - unsoldTickets();
+        } finally {
+            releaseLock.unlock();
+        }
+        if (room > 0) {
+            signalWaitingVendors(room);
+        }
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    // Registers a callback that runs once a sale makes room in the pool
+    // Each sold ticket runs at most one callback, so a single sale does not wake every waiting vendor
+    // Cancel the returned waiter to stop waiting
+    public CapacityWaiter awaitCapacity(Runnable onCapacity) {
+        CapacityWaiter waiter = new CapacityWaiter(onCapacity);
+        capacityWaiters.offer(waiter);
+        // A sale may have happened while registering, in that case go straight away
+        if (unsoldTickets() < maxCapacity && capacityWaiters.remove(waiter)) {
+            waiter.fire();
+        }
+        return waiter;
+    }
+
+    // Runs up to count vendor callbacks, skipping waiters that were cancelled
+    private void signalWaitingVendors(int count) {
+        int woken = 0;
+        CapacityWaiter waiter;
+        while (woken < count && (waiter = capacityWaiters.poll()) != null) {
+            if (waiter.fire()) {
+                woken++;
+            }
+        }
+    }
+
+    // Claims up to count of the unclaimed available tickets, returns how many were claimed
+    private int reserveAvailable(int count, boolean allOrNothing) {
+        while (true) {
+            int available = availableCount.get();
+            int claim = Math.min(count, available);
+            if (claim == 0 || (allOrNothing && claim < count)) {
+                return 0;
+            }
+            if (availableCount.compareAndSet(available, available - claim)) {
+                return claim;
+            }
+        }
+    }
+
+    // Takes one ticket for a seller that already holds a reservation
+    // Starts at the home shard and steals from the others, a reserved ticket is always in some shard
+    private Ticket takeReserved(int home) {
+        while (true) {
+            for (int i = 0; i < shards.length; i++) {
+                int ticketId = shards[(home + i) % shards.length].poll();
+                if (ticketId != TicketShard.NO_TICKET) {
+                    return tickets.get(ticketId);
+                }
             }
+            Thread.onSpinWait(); // Tickets moved between shards while scanning, go round again
+        }
+    }
+
+    // Removes (sells) a ticket to a customer
+    // Pops the next available ticket from the customer's shard instead of scanning past sold tickets
+    public PurchaseResult removeTicket(int customerId) {
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        PurchaseResult result = sellOne(customerId, reserveAvailable(1, false));
+        if (poolMetrics != null) {
+            poolMetrics.removeTicket.record(System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    // Like removeTicket, but parks the customer for up to timeoutMillis while the pool is empty
+    public PurchaseResult removeTicket(int customerId, long timeoutMillis) throws InterruptedException {
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        PurchaseResult result = sellOne(customerId, reserveAvailableWaiting(1, timeoutMillis));
+        if (poolMetrics != null) {
+            poolMetrics.removeTicket.record(System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    private PurchaseResult sellOne(int customerId, int reserved) {
+        if (reserved == 0) {
+            Utils.addLog(LogEventType.NO_TICKETS_AVAILABLE, customerId, LogEvent.NONE, LogEvent.NONE);
+            countNoTicketsAvailable();
+            return PurchaseResult.NO_TICKETS_AVAILABLE;
+        }
+        Ticket ticket = takeReserved(homeShard(customerId));
+        markSold(ticket, customerId);
+        // Journal the sale before the customer's ticket list can show it
+        TicketJournal poolJournal = journal;
+        long lsn = poolJournal == null ? -1 : poolJournal.appendSale(customerId, ticket.getId());
+        ticketIdsByOwner.add(customerId, ticket.getId());
+        completeSale(ticket, customerId);
+        totalTicketsSold.incrementAndGet();
+        signalWaitingVendors(1);
+        recordPurchase(customerId, 1);
+        awaitDurable(poolJournal, lsn);
+
+        // Logging using Utils
+        Utils.addLog(LogEventType.TICKET_SOLD, customerId, ticket.getId(), getAvailableTickets());
+        return PurchaseResult.sold(ticket);
+    }
+
+    // Sells up to count tickets to a customer in one reservation
+    // ALL_OR_NOTHING sells nothing unless every requested ticket is available, BEST_EFFORT sells what is there
+    public BulkPurchaseResult removeTickets(int customerId, int count, BulkPurchaseMode mode) {
+        checkPurchaseCount(count);
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        BulkPurchaseResult result = sellBulk(customerId, count, mode,
+                reserveAvailable(count, mode == BulkPurchaseMode.ALL_OR_NOTHING));
+        if (poolMetrics != null) {
+            poolMetrics.removeTickets.record(System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    // Like removeTickets, but a BEST_EFFORT purchase waits up to timeoutMillis for the first ticket
+    // ALL_OR_NOTHING purchases never wait, a partly filled pool could otherwise keep them parked indefinitely
+    public BulkPurchaseResult removeTickets(int customerId, int count, BulkPurchaseMode mode, long timeoutMillis)
+            throws InterruptedException {
+        checkPurchaseCount(count);
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        int reserved = mode == BulkPurchaseMode.ALL_OR_NOTHING
+                ? reserveAvailable(count, true)
+                : reserveAvailableWaiting(count, timeoutMillis);
+        BulkPurchaseResult result = sellBulk(customerId, count, mode, reserved);
+        if (poolMetrics != null) {
+            poolMetrics.removeTickets.record(System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    private static void checkPurchaseCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Number of tickets to purchase must be positive.");
+        }
+    }
+
+    // Takes the reserved tickets out of the shards and marks them sold to the customer
+    private BulkPurchaseResult sellBulk(int customerId, int count, BulkPurchaseMode mode, int reserved) {
+        if (reserved == 0) {
+            if (mode == BulkPurchaseMode.ALL_OR_NOTHING && availableCount.get() > 0) {
+                Utils.addLog(LogEventType.BULK_PURCHASE_REJECTED, customerId, LogEvent.NONE, count);
+                return BulkPurchaseResult.failed(count, "Not enough tickets available.");
+            }
+            Utils.addLog(LogEventType.NO_TICKETS_AVAILABLE, customerId, LogEvent.NONE, LogEvent.NONE);
+            countNoTicketsAvailable();
+            return BulkPurchaseResult.failed(count, "No tickets available.");
+        }
+
+        // Drain the home shard first, then steal from the others until the reservation is filled
+        int[] ticketIds = new int[reserved];
+        int home = homeShard(customerId);
+        int filled = 0;
+        while (filled < reserved) {
+            for (int i = 0; i < shards.length && filled < reserved; i++) {
+                filled += shards[(home + i) % shards.length].pollInto(ticketIds, filled, reserved - filled);
+            }
+            if (filled < reserved) {
+                Thread.onSpinWait();
+            }
+        }
+
+        for (int ticketId : ticketIds) {
+            markSold(tickets.get(ticketId), customerId);
+        }
+        TicketJournal poolJournal = journal;
+        long lsn = poolJournal == null ? -1 : poolJournal.appendSales(customerId, ticketIds);
+        ticketIdsByOwner.addAll(customerId, ticketIds);
+        for (int ticketId : ticketIds) {
+            completeSale(tickets.get(ticketId), customerId);
+        }
+        totalTicketsSold.addAndGet(reserved);
+        signalWaitingVendors(reserved);
+        recordPurchase(customerId, reserved);
+        awaitDurable(poolJournal, lsn);
+        Utils.addLog(LogEventType.TICKETS_SOLD_BULK, customerId, ticketIds[0], reserved);
+        return BulkPurchaseResult.sold(count, ticketIds);
+    }
+
+    private void recordPurchase(int customerId, int tickets) {
+        PoolMetrics poolMetrics = metrics;
+        if (poolMetrics != null) {
+            poolMetrics.customerPurchases.record(customerId, tickets);
+        }
+    }
+
+    private void countNoTicketsAvailable() {
+        PoolMetrics poolMetrics = metrics;
+        if (poolMetrics != null) {
+            poolMetrics.noTicketsAvailable.increment();
+        }
+    }
+
+    // Only available tickets are ever queued in a shard, so the transition cannot lose a race
+    private void markSold(Ticket ticket, int customerId) {
+        if (!ticket.trySell(customerId)) {
+            throw new IllegalStateException("Ticket ID " + ticket.getId() + " was queued for sale but is not available.");
+        }
+    }
+
+    // The sale is journaled and in the owner index, only now may a refund take the ticket back
+    private void completeSale(Ticket ticket, int customerId) {
+        if (!ticket.completeSale(customerId)) {
+            throw new IllegalStateException("Ticket ID " + ticket.getId() + " was being sold but changed before the sale finished.");
+        }
+    }
+
+    // Holds the next available ticket for a customer until ttlMillis passes or the hold is confirmed or released
+    public PurchaseResult holdTicket(int customerId, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Hold time must be positive.");
+        }
+        // Count the hold before the ticket leaves the available count, so vendors never see the extra room
+        totalTicketsHeld.incrementAndGet();
+        if (reserveAvailable(1, false) == 0) {
+            totalTicketsHeld.decrementAndGet();
+            Utils.addLog(LogEventType.NO_TICKETS_AVAILABLE, customerId, LogEvent.NONE, LogEvent.NONE);
+            countNoTicketsAvailable();
+            return PurchaseResult.NO_TICKETS_AVAILABLE;
+        }
+        Ticket ticket = takeReserved(homeShard(customerId));
+        int holdStamp = holdStampCounter.incrementAndGet() & Ticket.HOLD_STAMP_MASK;
+        if (!ticket.tryHold(customerId, holdStamp)) {
+            throw new IllegalStateException("Ticket ID " + ticket.getId() + " was queued for sale but is not available.");
+        }
+        holdExpiry.schedule(ticket.getId(), customerId, holdStamp, ttlMillis);
+        Utils.addLog(LogEventType.TICKET_HELD, customerId, ticket.getId(), (int) (ttlMillis / 1000));
+        return PurchaseResult.sold(ticket);
+    }
+
+    // Completes the purchase of a ticket held for the customer, fails if the hold has expired or been released
+    public boolean confirmHold(int customerId, int ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null || !ticket.tryConfirmHold(customerId)) {
+            return false;
+        }
+        TicketJournal poolJournal = journal;
+        long lsn = poolJournal == null ? -1 : poolJournal.appendSale(customerId, ticketId);
+        ticketIdsByOwner.add(customerId, ticketId);
+        completeSale(ticket, customerId);
+        totalTicketsSold.incrementAndGet();
+        totalTicketsHeld.decrementAndGet();
+        signalWaitingVendors(1);
+        recordPurchase(customerId, 1);
+        awaitDurable(poolJournal, lsn);
+        Utils.addLog(LogEventType.HOLD_CONFIRMED, customerId, ticketId, LogEvent.NONE);
+        return true;
+    }
+
+    // Gives a held ticket back to the pool before its hold expires
+    public boolean releaseHold(int customerId, int ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null || !ticket.tryReleaseHold(customerId)) {
+            return false;
+        }
+        returnHeldTickets(new int[] {ticketId}, 1);
+        Utils.addLog(LogEventType.HOLD_RELEASED, customerId, ticketId, LogEvent.NONE);
+        return true;
+    }
+
+    // Called by the sweeper thread with every hold due on the current tick
+    private void expireHolds(List<HoldExpiryWheel.Hold> due) {
+        int[] expired = new int[due.size()];
+        int count = 0;
+        for (HoldExpiryWheel.Hold hold : due) {
+            // Fails for holds that were confirmed or released in the meantime
+            if (tickets.get(hold.ticketId).tryExpireHold(hold.customerId, hold.holdStamp)) {
+                expired[count++] = hold.ticketId;
+                Utils.addLog(LogEventType.HOLD_EXPIRED, hold.customerId, hold.ticketId, LogEvent.NONE);
+            }
+        }
+        if (count > 0) {
+            returnHeldTickets(expired, count);
+        }
+    }
+
+    // Puts tickets whose hold ended back on sale in the shards they were released into
+    private void returnHeldTickets(int[] returned, int count) {
+        for (int i = 0; i < count; i++) {
+            shards[homeShard(tickets.getVendorId(returned[i]))].offer(returned[i]);
+        }
+        // Make them claimable before dropping the hold count, so the unsold total never dips below the real one
+        availableCount.addAndGet(count);
+        totalTicketsHeld.addAndGet(-count);
+        signalWaitingCustomers(count);
+    }
+
+    // Stops expiring holds, called when the system shuts down
+    public void stopHoldExpiry() {
+        holdExpiry.stop();
+    }
+
+    // Refunds a ticket previously purchased by a customer
+    public boolean refundTicket(int customerId, int ticketId) {
+        PoolMetrics poolMetrics = metrics;
+        long started = startTiming(poolMetrics);
+        boolean refunded = refund(customerId, ticketId);
+        if (poolMetrics != null) {
+            poolMetrics.refundTicket.record(System.nanoTime() - started);
+        }
+        return refunded;
+    }
+
+    private boolean refund(int customerId, int ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null) {
+            return false;
+        }
+        if (!ticket.tryRefund(customerId)) {
+            return false;
+        }
+        // Drop it from the owner index before it can be sold again
+        ticketIdsByOwner.remove(customerId, ticketId);
+        // Journal the refund before the ticket can be sold to someone else
+        TicketJournal poolJournal = journal;
+        long lsn = poolJournal == null ? -1 : poolJournal.appendRefund(customerId, ticketId);
+        totalTicketsSold.decrementAndGet();
+        // Put the refunded ticket back on sale in the shard it was released into
+        shards[homeShard(ticket.getVendorId())].offer(ticketId);
+        availableCount.incrementAndGet();
+        signalWaitingCustomers(1);
+        awaitDurable(poolJournal, lsn);
+        Utils.addLog(LogEventType.TICKET_REFUNDED, customerId, ticketId, LogEvent.NONE);
+        return true;
+    }
+
+    // Retrieves all tickets released by a specific vendor
+    public List<Ticket> getTicketsByVendor(int vendorId) {
+        int[] released = ticketIdsByVendor.get(vendorId);
+        List<Ticket> vendorTickets = new ArrayList<>(released.length);
+        for (int ticketId : released) {
+            vendorTickets.add(tickets.get(ticketId));
         }
         return vendorTickets;
     }
 
     // Retrieves all tickets owned by a specific customer
-    public synchronized List<Ticket> getTicketsByCustomer(int customerId) {
-        List<Ticket> customerTickets = new ArrayList<>();
-        for (Ticket ticket : tickets) {
-            if (ticket.getOwnerId() == customerId && ticket.getStatus() == TicketStatus.SOLD) {
-                customerTickets.add(ticket);
-            }
+    public List<Ticket> getTicketsByCustomer(int customerId) {
+        int[] owned = ticketIdsByOwner.get(customerId);
+        int count = keepOwned(owned, customerId);
+        List<Ticket> customerTickets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            customerTickets.add(tickets.get(owned[i]));
         }
         return customerTickets;
     }
 
+    // IDs of the tickets owned by a customer in ticket ID order, without creating a Ticket for each
+    public PrimitiveIterator.OfInt getTicketIdsByCustomer(int customerId) {
+        int[] owned = ticketIdsByOwner.get(customerId);
+        return IntArrayList.iterator(owned, keepOwned(owned, customerId));
+    }
+
+    // IDs of the tickets released by a vendor in release order, without creating a Ticket for each
+    public PrimitiveIterator.OfInt getTicketIdsByVendor(int vendorId) {
+        int[] released = ticketIdsByVendor.get(vendorId);
+        return IntArrayList.iterator(released, released.length);
+    }
+
+    // Number of tickets a vendor has released, counting those sold since
+    public int getTicketCountByVendor(int vendorId) {
+        return ticketIdsByVendor.count(vendorId);
+    }
+
+    // Number of tickets a customer owns now, refunded tickets are not counted
+    public int getTicketCountByCustomer(int customerId) {
+        int[] owned = ticketIdsByOwner.get(customerId);
+        return keepOwned(owned, customerId);
+    }
+
+    // The owner index entries of a customer as they are, before keepOwned checks them against the tickets
+    int[] getIndexedTicketIds(int customerId) {
+        return ticketIdsByOwner.get(customerId);
+    }
+
+    // Moves the IDs of tickets still sold to the customer to the front of the array in ticket ID order
+    // Returns how many there are
+    private int keepOwned(int[] ticketIds, int customerId) {
+        int count = 0;
+        for (int ticketId : ticketIds) {
+            // The index is updated just after the ticket state, so confirm against the ticket itself
+            if (tickets.isSoldTo(ticketId, customerId)) {
+                ticketIds[count++] = ticketId;
+            }
+        }
+        Arrays.sort(ticketIds, 0, count);
+        return count;
+    }
+
     // Getters for statistics
     public int getTotalTicketsReleased() {
         return totalTicketsReleased.get();
@@ -138,6 +767,27 @@ public class TicketPool {
     }
 
     public int getAvailableTickets() {
-        return tickets.size() - totalTicketsSold.get();
+        return availableCount.get();
+    }
+
+    public int getTicketsHeld() {
+        return totalTicketsHeld.get();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Lock acquisitions that had to wait for another thread, summed over every shard
+    public long getShardLockContention() {
+        long contended = 0;
+        for (TicketShard shard : shards) {
+            contended += shard.getContendedAcquisitions();
+        }
+        return contended;
+    }
+
+    public long getReleaseLockContention() {
+        return releaseLockContention.sum();
     }
 }
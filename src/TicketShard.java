@@ -0,0 +1,75 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One stripe of the ticket pool, holds the IDs of the available tickets released into it behind its own lock
+// Only IDs are queued, the tickets themselves stay in the TicketStore, so a pool kept in a mapped table has no
+// ticket objects on the heap for the tickets on sale
+class TicketShard {
+    static final int NO_TICKET = 0; // Ticket IDs start at 1
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final IntArrayQueue available = new IntArrayQueue();
+    private final LongAdder contendedAcquisitions = new LongAdder(); // Times the lock was taken only after waiting
+    private volatile LatencyHistogram lockWait; // Set once metrics are registered
+
+    void offer(int ticketId) {
+        acquire();
+        try {
+            available.offer(ticketId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues count consecutive ticket IDs starting at firstTicketId, as handed out by one release
+    void offerRange(int firstTicketId, int count) {
+        acquire();
+        try {
+            available.offerRange(firstTicketId, count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the oldest available ticket ID, or NO_TICKET if the shard is empty
+    int poll() {
+        acquire();
+        try {
+            return available.isEmpty() ? NO_TICKET : available.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes up to max ticket IDs into out starting at offset, returns how many were taken
+    int pollInto(int[] out, int offset, int max) {
+        acquire();
+        try {
+            return available.pollInto(out, offset, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Counts the acquisitions that found the lock taken, the count is only touched when there is contention
+    private void acquire() {
+        if (lock.tryLock()) {
+            return;
+        }
+        contendedAcquisitions.increment();
+        LatencyHistogram histogram = lockWait;
+        long started = histogram == null ? 0 : System.nanoTime();
+        lock.lock();
+        if (histogram != null) {
+            histogram.record(System.nanoTime() - started);
+        }
+    }
+
+    void recordLockWait(LatencyHistogram histogram) {
+        this.lockWait = histogram;
+    }
+
+    long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+}
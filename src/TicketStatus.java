@@ -1,6 +1,8 @@
 public enum TicketStatus {
     AVAILABLE("available"),
-    SOLD("sold");
+    HELD("held"), // Reserved for a customer during checkout, returns to AVAILABLE if the hold expires
+    SOLD("sold"),
+    SELLING("selling"); // Sold, but the sale is not yet journaled and indexed, so it cannot be refunded yet
 
     private final String status;
 
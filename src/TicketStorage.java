@@ -0,0 +1,5 @@
+// Where the ticket pool keeps its tickets
+public enum TicketStorage {
+    HEAP, // One object per ticket on the Java heap
+    MAPPED // Fixed-size records in a memory-mapped file in the data directory, off the heap and kept across restarts
+}
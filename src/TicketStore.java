@@ -0,0 +1,145 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Append-only ticket storage split into fixed-size chunks and indexed by ticket ID
+// Appends never copy existing tickets, only the small chunk directory is grown when it runs out of slots
+// Readers do not need a lock, they only see tickets published before they read the size
+// Backed by a MappedTicketTable the tickets are kept off the heap instead, and get returns a view of the ticket's record
+public class TicketStore implements Iterable<Ticket> {
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final int MAX_CHUNK_SIZE = 16384;
+    private static final int TARGET_CHUNKS = 16; // Aim for about this many chunks to hold a full pool
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private volatile Ticket[][] chunks;
+    private volatile int size;
+    private final MappedTicketTable table; // null when the tickets are kept on the heap
+
+    // Sizes the chunks from the configured maximum pool capacity
+    public TicketStore(int maxTicketCapacity) {
+        this(maxTicketCapacity, null);
+    }
+
+    // Keeps the tickets in the mapped table when one is given
+    public TicketStore(int maxTicketCapacity, MappedTicketTable table) {
+        this.table = table;
+        int chunkSize = chunkSizeFor(maxTicketCapacity);
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        int initialChunks = Math.max(1, (maxTicketCapacity + chunkSize - 1) / chunkSize);
+        this.chunks = new Ticket[table == null ? initialChunks : 0][];
+        this.size = 0;
+    }
+
+    // The mapped table the tickets are kept in, null when they are on the heap
+    public MappedTicketTable getTable() {
+        return table;
+    }
+
+    // Picks a power of two chunk size so a full pool spans roughly TARGET_CHUNKS chunks
+    static int chunkSizeFor(int maxTicketCapacity) {
+        int wanted = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, maxTicketCapacity / TARGET_CHUNKS));
+        int chunkSize = Integer.highestOneBit(wanted);
+        return chunkSize < wanted ? chunkSize << 1 : chunkSize;
+    }
+
+    // Appends a new available ticket, ticket IDs must be handed out in order starting at 1
+    public synchronized Ticket append(int ticketId, int vendorId) {
+        if (table != null) {
+            table.append(ticketId, vendorId, Ticket.availableState());
+            return new Ticket(ticketId, vendorId, table);
+        }
+        Ticket ticket = new Ticket(ticketId, TicketStatus.AVAILABLE, vendorId);
+        int index = size;
+        if (ticket.getId() != index + 1) {
+            throw new IllegalArgumentException("Ticket ID " + ticket.getId() + " is out of order, expected " + (index + 1));
+        }
+        int chunkIndex = index >>> chunkShift;
+        Ticket[][] directory = chunks;
+        if (chunkIndex == directory.length) {
+            // Double the directory, the chunks themselves are reused as they are
+            Ticket[][] grown = new Ticket[directory.length * 2][];
+            System.arraycopy(directory, 0, grown, 0, directory.length);
+            directory = grown;
+            chunks = directory;
+        }
+        Ticket[] chunk = directory[chunkIndex];
+        if (chunk == null) {
+            chunk = new Ticket[chunkMask + 1];
+            directory[chunkIndex] = chunk;
+        }
+        chunk[index & chunkMask] = ticket;
+        size = index + 1; // Publishes the ticket to readers
+        return ticket;
+    }
+
+    // Empties the store before recovery rebuilds it, a heap store has nothing to clear as it starts empty each run
+    public synchronized void clear() {
+        if (table != null) {
+            table.truncate(0);
+        } else if (size > 0) {
+            throw new IllegalStateException("Tickets can only be restored into an empty pool.");
+        }
+    }
+
+    // Retrieves a ticket by its ID, or null if no such ticket has been released
+    public Ticket get(int ticketId) {
+        if (table != null) {
+            return ticketId >= 1 && ticketId <= table.size() ? new Ticket(ticketId, table.getVendorId(ticketId), table) : null;
+        }
+        int index = ticketId - 1;
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return chunks[index >>> chunkShift][index & chunkMask];
+    }
+
+    // Vendor of a released ticket, read without creating a view of a mapped ticket
+    public int getVendorId(int ticketId) {
+        if (table != null) {
+            return table.getVendorId(ticketId);
+        }
+        return get(ticketId).getVendorId();
+    }
+
+    // Checks a ticket's status and owner without creating a view of a mapped ticket
+    public boolean isSoldTo(int ticketId, int customerId) {
+        if (table != null) {
+            return ticketId >= 1 && ticketId <= table.size() && Ticket.buyerOf(table.getState(ticketId)) == customerId;
+        }
+        Ticket ticket = get(ticketId);
+        return ticket != null && ticket.isSoldTo(customerId);
+    }
+
+    public int size() {
+        return table != null ? table.size() : size;
+    }
+
+    // Iterates over the tickets released so far, tickets appended afterwards are not visited
+    @Override
+    public Iterator<Ticket> iterator() {
+        final int limit = size();
+        final Ticket[][] directory = chunks;
+        return new Iterator<Ticket>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < limit;
+            }
+
+            @Override
+            public Ticket next() {
+                if (index >= limit) {
+                    throw new NoSuchElementException();
+                }
+                index++;
+                if (table != null) {
+                    return new Ticket(index, table.getVendorId(index), table);
+                }
+                return directory[(index - 1) >>> chunkShift][(index - 1) & chunkMask];
+            }
+        };
+    }
+}
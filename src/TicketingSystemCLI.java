@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -5,22 +10,28 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class TicketingSystemCLI {
-    // Configuration instance
+    // Configuration instance, changes to the file are applied while the system runs
     private static Configuration config;
+    private static ConfigWatcher configWatcher;
 
-    // Use thread safe lists
-    private static final List<Vendor> vendors = new CopyOnWriteArrayList<>();
-    private static final List<Customer> customers = new CopyOnWriteArrayList<>();
+    // Registered users, indexed by ID and email and saved in the data directory
+    private static UserRegistry<Vendor> vendors;
+    private static UserRegistry<Customer> customers;
+    private static UserStore<Vendor> vendorStore;
+    private static UserStore<Customer> customerStore;
+    private static CredentialStore credentials;
 
-    // Initialize Executor Services
-    private static final ExecutorService vendorExecutor = Executors.newFixedThreadPool(10);
-    private static final ExecutorService customerExecutor = Executors.newFixedThreadPool(50);
+    // Vendors release on a shared scheduler, customers run on an Executor Service created once the execution mode is known
+    private static VendorScheduler vendorScheduler;
+    private static ExecutorService customerExecutor;
 
-    // To keep track of running tasks
-    private static final Map<Integer, Future<?>> vendorTasks = new ConcurrentHashMap<>();
+    // To keep track of running customer tasks
     private static final Map<Integer, Future<?>> customerTasks = new ConcurrentHashMap<>();
 
     private static TicketPool ticketPool;
+    private static final MetricsRegistry metrics = new MetricsRegistry();
+    private static PoolPersistence persistence;
+    private static MappedTicketTable ticketTable; // Only opened for MAPPED ticket storage
     private static volatile boolean running = true;
 
     // Atomic counters for IDs
@@ -34,16 +45,88 @@ public class TicketingSystemCLI {
         // Initialize Configuration
         config = new Configuration();
         config.loadConfiguration();
+        Utils.startLogWriter(config);
+
+
+        // Keep the tickets in a memory-mapped file rather than on the heap if configured to
+        if (config.getTicketStorage() == TicketStorage.MAPPED) {
+            try {
+                Files.createDirectories(Paths.get(Constants.DATA_DIRECTORY));
+                ticketTable = MappedTicketTable.open(Paths.get(Constants.DATA_DIRECTORY, Constants.TICKET_TABLE_FILE));
+            } catch (IOException e) {
+                Utils.synchronizedPrintFormat("Failed to open the ticket table: %s", e.getMessage());
+                Utils.shutdownLogWriter();
+                return;
+            }
+        }
 
         // Initialize Ticket Pool with configured max capacity and ticket price
         try {
-            TicketPool.initialize(config.getMaxTicketCapacity(), config.getTicketPrice());
+            TicketPool.initialize(config.getMaxTicketCapacity(), config.getTicketPrice(), config.getPoolShards(), ticketTable);
             ticketPool = TicketPool.getInstance();
         } catch (IllegalStateException e) {
             Utils.synchronizedPrintFormat("Failed to initialize TicketPool: %s", e.getMessage());
             return; // Terminate the program if TicketPool fails to initialize
         }
 
+        // Recover the tickets from the previous run and journal every change from here on
+        try {
+            persistence = PoolPersistence.open(ticketPool, Constants.DATA_DIRECTORY, config.getJournalSyncMode(),
+                    config.getJournalSyncInterval(), config.getJournalSyncBatch(), config.getSnapshotInterval());
+        } catch (IOException e) {
+            Utils.synchronizedPrintFormat("Failed to recover the ticket pool from %s: %s", Constants.DATA_DIRECTORY, e.getMessage());
+            Utils.shutdownLogWriter();
+            return;
+        }
+        if (persistence.getRecoveredTickets() > 0) {
+            Utils.synchronizedPrintFormat("Recovered %d tickets (%d journal records replayed) in %d ms",
+                    persistence.getRecoveredTickets(), persistence.getReplayedRecords(), persistence.getRecoveryMillis());
+        }
+        // Users registered in earlier runs are read from their files when they are first needed
+        try {
+            vendorStore = UserStore.open(Paths.get(Constants.DATA_DIRECTORY, Constants.VENDORS_FILE),
+                    Vendor.storeCodec(config, ticketPool));
+            customerStore = UserStore.open(Paths.get(Constants.DATA_DIRECTORY, Constants.CUSTOMERS_FILE),
+                    Customer.storeCodec(config, ticketPool));
+        } catch (IOException e) {
+            Utils.synchronizedPrintFormat("Failed to open the user files in %s: %s", Constants.DATA_DIRECTORY, e.getMessage());
+            persistence.close();
+            Utils.shutdownLogWriter();
+            return;
+        }
+        vendors = new UserRegistry<>(vendorStore);
+        customers = new UserRegistry<>(customerStore);
+        if (!vendors.isEmpty() || !customers.isEmpty()) {
+            Utils.synchronizedPrintFormat("Found %d registered vendors and %d registered customers", vendors.size(), customers.size());
+        }
+        // Number new users after the saved ones and the ones that own recovered tickets
+        vendorIdCounter.set(Math.max(persistence.getHighestVendorId(), vendors.getHighestId()) + 1);
+        customerIdCounter.set(Math.max(persistence.getHighestCustomerId(), customers.getHighestId()) + 1);
+
+        // Record pool and log metrics, and append a report to the metrics file on the configured interval
+        ticketPool.registerMetrics(metrics);
+        persistence.registerMetrics(metrics);
+        Utils.registerMetrics(metrics);
+
+        // Passwords are hashed and checked on the credential workers rather than the menu thread
+        credentials = CredentialStore.createDefault();
+        credentials.registerMetrics(metrics);
+        metrics.startDumping(Constants.METRICS_FILE, config.getMetricsDumpInterval());
+
+        // Initialize the Vendor Scheduler and Executor Service
+        vendorScheduler = new VendorScheduler(ticketPool, Constants.VENDOR_SCHEDULER_THREADS);
+        customerExecutor = createExecutor("customer-", Constants.CUSTOMER_THREAD_POOL_SIZE);
+
+        // Apply rate and capacity changes to config.json to the running vendors, customers and pool
+        configWatcher = new ConfigWatcher(config, Paths.get(Constants.CONFIG_FILE), ticketPool, vendorScheduler,
+                vendors, customers);
+        try {
+            configWatcher.start();
+        } catch (IOException e) {
+            Utils.synchronizedPrintFormat("Changes to %s will need a restart, it cannot be watched: %s",
+                    Constants.CONFIG_FILE, e.getMessage());
+        }
+
         // Start the command thread to handle user inputs
         Thread commandThread = new Thread(() -> {
             while (running) {
@@ -74,12 +157,21 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrintFormat("Total tickets released: %d", ticketPool.getTotalTicketsReleased());
         Utils.synchronizedPrintFormat("Total tickets sold: %d", ticketPool.getTotalTicketsSold());
         Utils.synchronizedPrintFormat("Tickets remaining in pool: %d", ticketPool.getAvailableTickets());
+        Utils.synchronizedPrintFormat("Tickets held at checkout: %d", ticketPool.getTicketsHeld());
 
         // Close the shared scanner
         scanner.close();
         Utils.synchronizedPrint("Scanner closed. System terminated.");
     }
 
+    // Creates a fixed platform thread pool, or one virtual thread per task in VIRTUAL mode
+    private static ExecutorService createExecutor(String threadPrefix, int poolSize) {
+        if (config.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadPrefix, 1).factory());
+        }
+        return Executors.newFixedThreadPool(poolSize);
+    }
+
     private static void displayMenu() {
         Utils.synchronizedPrint("\nWavePass: Your Boat Ride Ticketing System");
         Utils.synchronizedPrint("\n========== Main Menu ==========");
@@ -91,7 +183,8 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrint("5. View System Status");
         Utils.synchronizedPrint("6. View Activity Logs");
         Utils.synchronizedPrint("7. Update Configuration");
-        Utils.synchronizedPrint("8. Exit");
+        Utils.synchronizedPrint("8. View Metrics");
+        Utils.synchronizedPrint("9. Exit");
         Utils.synchronizedPrint("================================");
     }
 
@@ -119,11 +212,14 @@ public class TicketingSystemCLI {
                 updateConfiguration();
                 break;
             case "8":
+                viewMetrics();
+                break;
+            case "9":
                 running = false;
                 Utils.synchronizedPrint("Stopping the system...");
                 break;
             default:
-                Utils.synchronizedPrint("Invalid option. Please select a number between 1 and 8.");
+                Utils.synchronizedPrint("Invalid option. Please select a number between 1 and 9.");
                 break;
         }
     }
@@ -132,32 +228,36 @@ public class TicketingSystemCLI {
         synchronized (Utils.consoleLock) {
             System.out.println("\n--- Update Configuration ---");
         }
-        config.promptUserForConfiguration();
-        config.saveConfiguration();
+        // Prompt into a copy so the running system only changes once the new values are applied as a whole
+        Configuration updated = config.copy();
+        updated.promptUserForConfiguration();
+        updated.saveConfiguration();
+        if (configWatcher.apply(updated)) {
+            Utils.synchronizedPrint("Configuration applied to the running system, see the activity logs for each change.");
+        }
+    }
+
+    // Prints every counter, gauge, latency histogram and the busiest vendors and customers
+    private static void viewMetrics() {
+        Utils.synchronizedPrint("");
+        Utils.synchronizedPrint(metrics.report());
+        Utils.synchronizedPrintFormat("A report is also appended to %s every %d ms.",
+                Constants.METRICS_FILE, config.getMetricsDumpInterval());
     }
 
     private static void viewActivityLogs() {
         Utils.synchronizedPrint("\n--- Activity Logs ---");
         if (Utils.activityLogs.isEmpty()) {
             Utils.synchronizedPrint("No activity logs available.");
-        } else {
-            for (String log : Utils.activityLogs) {
-                Utils.synchronizedPrint(log);
-            }
         }
+        long startCursor = printLogsSince(0);
         Utils.synchronizedPrint("----------------------");
         Utils.synchronizedPrint("Press 'q' and Enter to exit logs view.");
 
         Thread logMonitorThread = new Thread(() -> {
-            int lastIndex = Utils.activityLogs.size();
+            long cursor = startCursor;
             while (!Thread.currentThread().isInterrupted()) {
-                List<String> logs = Utils.activityLogs;
-                if (logs.size() > lastIndex) {
-                    for (int i = lastIndex; i < logs.size(); i++) {
-                        Utils.synchronizedPrint(logs.get(i));
-                    }
-                    lastIndex = logs.size();
-                }
+                cursor = printLogsSince(cursor);
                 try {
                     Thread.sleep(1000); // Check for new logs every second
                 } catch (InterruptedException e) {
@@ -182,19 +282,26 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrint("--- End of Activity Logs ---");
     }
 
+    // Prints the log entries added since the given sequence number and returns the cursor for the next call
+    private static long printLogsSince(long cursor) {
+        if (cursor < Utils.activityLogs.getOldestSequence()) {
+            Utils.synchronizedPrintFormat("(%d older log entries were skipped)", Utils.activityLogs.getOldestSequence() - cursor);
+        }
+        List<LogEvent> logs = new ArrayList<>();
+        long nextCursor = Utils.activityLogs.readSince(cursor, logs);
+        for (LogEvent log : logs) {
+            Utils.synchronizedPrint(log.toString());
+        }
+        return nextCursor;
+    }
+
     // Register a new Vendor
     private static void registerVendor() {
         Utils.synchronizedPrint("\n--- Register New Vendor ---");
         Utils.synchronizedPrint("Enter your name: ");
         String name = scanner.nextLine().trim();
 
-        // Email validation
-        Utils.synchronizedPrint("Enter your email: ");
-        String email = scanner.nextLine().trim();
-        while (!isValidEmail(email)) {
-            Utils.synchronizedPrint("Invalid email format. Please enter a valid email: ");
-            email = scanner.nextLine().trim();
-        }
+        String email = readNewEmail(vendors);
 
         // Mobile number validation
         Utils.synchronizedPrint("Enter your mobile number: ");
@@ -213,6 +320,8 @@ public class TicketingSystemCLI {
             Utils.synchronizedPrint("Enter your password: ");
             password = scanner.nextLine().trim();
         }
+        // Hash the password while the remaining details are entered
+        CompletableFuture<PasswordHash> passwordHash = credentials.hash(password);
 
         // Calculate remaining tickets based on systemTotalTickets and already released tickets
         int remainingTickets = config.getTotalTickets() - ticketPool.getTotalTicketsReleased();
@@ -235,32 +344,71 @@ public class TicketingSystemCLI {
         int releaseInterval = config.getTicketReleaseRate();
 
         int vendorId = generateVendorId();
-        Vendor vendor = new Vendor(vendorId, name, email, password, mobileNumber,
-                ticketsPerRelease, releaseInterval, totalTicketsToRelease, ticketPool);
-        vendors.add(vendor);
+        Vendor vendor = new Vendor(vendorId, name, email, mobileNumber,
+                ticketsPerRelease, releaseInterval, totalTicketsToRelease, config.getWaitTimeout(), ticketPool);
+        if (!awaitCredentials(passwordHash)) {
+            Utils.synchronizedPrint("Registration failed.");
+            return;
+        }
+        vendor.setPasswordHash(passwordHash.join());
+        if (!register(vendors, vendor)) {
+            Utils.synchronizedPrint("Registration failed.");
+            return;
+        }
 
         Utils.synchronizedPrintFormat("Vendor registered successfully. Your Vendor ID is %d", vendorId);
     }
 
+    // Registers and saves a new user, returns false if the email is taken or the user could not be saved
+    private static <T extends User> boolean register(UserRegistry<T> registry, T user) {
+        try {
+            if (registry.register(user)) {
+                return true;
+            }
+            Utils.synchronizedPrint("This email was registered by someone else while you were signing up.");
+        } catch (UncheckedIOException e) {
+            Utils.synchronizedPrintFormat("Failed to save your account: %s", e.getCause().getMessage());
+        }
+        return false;
+    }
+
+    // Saves a user's changed settings, they still apply for this run if saving fails
+    private static <T extends User> void save(UserRegistry<T> registry, T user) {
+        try {
+            registry.save(user);
+        } catch (UncheckedIOException e) {
+            Utils.synchronizedPrintFormat("Failed to save your settings: %s", e.getCause().getMessage());
+        }
+    }
+
     // Helper method for email validation
     private static boolean isValidEmail(String email) {
         String emailRegex = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$";
         return email.matches(emailRegex);
     }
 
+    // Reads a valid email that no user in the registry has yet
+    private static String readNewEmail(UserRegistry<?> registry) {
+        Utils.synchronizedPrint("Enter your email: ");
+        String email = scanner.nextLine().trim();
+        while (!isValidEmail(email) || registry.isEmailTaken(email)) {
+            if (!isValidEmail(email)) {
+                Utils.synchronizedPrint("Invalid email format. Please enter a valid email: ");
+            } else {
+                Utils.synchronizedPrint("This email is already registered. Please enter a different email: ");
+            }
+            email = scanner.nextLine().trim();
+        }
+        return email;
+    }
+
     // Register a new Customer
     private static void registerCustomer() {
         Utils.synchronizedPrint("\n--- Register New Customer ---");
         Utils.synchronizedPrint("Enter your name: ");
         String name = scanner.nextLine().trim();
 
-        // Email validation
-        Utils.synchronizedPrint("Enter your email: ");
-        String email = scanner.nextLine().trim();
-        while (!isValidEmail(email)) {
-            Utils.synchronizedPrint("Invalid email format. Please enter a valid email: ");
-            email = scanner.nextLine().trim();
-        }
+        String email = readNewEmail(customers);
 
         // Mobile number validation
         Utils.synchronizedPrint("Enter your mobile number: ");
@@ -279,28 +427,23 @@ public class TicketingSystemCLI {
             Utils.synchronizedPrint("Enter your password: ");
             password = scanner.nextLine().trim();
         }
+        // Hash the password while the remaining details are entered
+        CompletableFuture<PasswordHash> passwordHash = credentials.hash(password);
 
         // Assign vendor
-        Vendor assignedVendor = null;
         if (vendors.isEmpty()) {
             Utils.synchronizedPrint("No vendors available. Please register a vendor first.");
             return;
         }
 
         Utils.synchronizedPrint("Available Vendors:");
-        for (Vendor v : vendors) {
+        for (Vendor v : vendors.getAll()) {
             Utils.synchronizedPrintFormat("Vendor ID: %d, Name: %s", v.getId(), v.getName());
         }
         Utils.synchronizedPrint("Enter Vendor ID to assign: ");
 
         int vendorId = readPositiveInt(scanner);
-        for (Vendor v : vendors) {
-            if (v.getId() == vendorId) {
-                assignedVendor = v;
-                break;
-            }
-        }
-
+        Vendor assignedVendor = vendors.getById(vendorId);
         if (assignedVendor == null) {
             Utils.synchronizedPrint("Invalid Vendor ID. Registration failed.");
             return;
@@ -314,13 +457,42 @@ public class TicketingSystemCLI {
 
         int customerId = generateCustomerId();
 
-        Customer customer = new Customer(customerId, name, email, password, mobileNumber,
-                totalTicketsDesired, customerRetrievalInterval, ticketPool);
-        customers.add(customer);
+        Customer customer = new Customer(customerId, name, email, mobileNumber,
+                totalTicketsDesired, customerRetrievalInterval, config.getWaitTimeout(), ticketPool);
+        if (!awaitCredentials(passwordHash)) {
+            Utils.synchronizedPrint("Registration failed.");
+            return;
+        }
+        customer.setPasswordHash(passwordHash.join());
+        if (!register(customers, customer)) {
+            Utils.synchronizedPrint("Registration failed.");
+            return;
+        }
 
         Utils.synchronizedPrintFormat("Customer registered successfully. Your Customer ID is %d", customerId);
     }
 
+    // Waits for the credential workers to hash or check a password
+    // Returns false, having told the user, if they are too busy to take it or it takes longer than LOGIN_TIMEOUT
+    private static boolean awaitCredentials(CompletableFuture<?> pending) {
+        try {
+            pending.get(Constants.LOGIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            pending.cancel(false);
+            Utils.synchronizedPrint("The system is busy checking passwords. Please try again shortly.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                Utils.synchronizedPrint("The system is busy checking passwords. Please try again shortly.");
+            } else {
+                Utils.synchronizedPrintFormat("Password check failed: %s", e.getCause().getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
     // Handles Vendor login by validating credentials
     private static void vendorLogin() {
         Utils.synchronizedPrint("\n--- Vendor Login ---");
@@ -330,20 +502,16 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrint("Enter your password: ");
         String password = scanner.nextLine().trim();
 
-        Vendor vendor = null;
-        for (Vendor v : vendors) {
-            if (v.getEmail().equalsIgnoreCase(email) && v.validatePassword(password)) {
-                vendor = v;
-                break;
-            }
+        CompletableFuture<Vendor> login = credentials.login(vendors, email, password);
+        if (!awaitCredentials(login)) {
+            return;
         }
+        Vendor vendor = login.join();
 
         if (vendor != null) {
             Utils.synchronizedPrintFormat("Login successful. Welcome, %s!", vendor.getName());
             // Start the vendor task if not already started
-            if (!vendorTasks.containsKey(vendor.getId()) || vendorTasks.get(vendor.getId()).isDone()) {
-                Future<?> future = vendorExecutor.submit(vendor);
-                vendorTasks.put(vendor.getId(), future);
+            if (vendorScheduler.start(vendor)) {
                 Utils.synchronizedPrintFormat("Vendor %d started releasing tickets.", vendor.getId());
             } else {
                 Utils.synchronizedPrint("Vendor is already running.");
@@ -364,13 +532,11 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrint("Enter your password: ");
         String password = scanner.nextLine().trim();
 
-        Customer customer = null;
-        for (Customer c : customers) {
-            if (c.getEmail().equalsIgnoreCase(email) && c.validatePassword(password)) {
-                customer = c;
-                break;
-            }
+        CompletableFuture<Customer> login = credentials.login(customers, email, password);
+        if (!awaitCredentials(login)) {
+            return;
         }
+        Customer customer = login.join();
 
         if (customer != null) {
             Utils.synchronizedPrintFormat("Login successful. Welcome, %s!", customer.getName());
@@ -410,9 +576,7 @@ public class TicketingSystemCLI {
                     break;
                 case "2":
                     // Start releasing tickets
-                    if (!vendorTasks.containsKey(vendor.getId()) || vendorTasks.get(vendor.getId()).isDone()) {
-                        Future<?> future = vendorExecutor.submit(vendor);
-                        vendorTasks.put(vendor.getId(), future);
+                    if (vendorScheduler.start(vendor)) {
                         Utils.synchronizedPrintFormat("Vendor %d started releasing tickets.", vendor.getId());
                     } else {
                         Utils.synchronizedPrint("Vendor is already running.");
@@ -446,7 +610,8 @@ public class TicketingSystemCLI {
             Utils.synchronizedPrint("3. Stop Purchasing Tickets");
             Utils.synchronizedPrint("4. View My Tickets");
             Utils.synchronizedPrint("5. Refund Ticket");
-            Utils.synchronizedPrint("6. Logout");
+            Utils.synchronizedPrint("6. Checkout a Ticket");
+            Utils.synchronizedPrint("7. Logout");
             Utils.synchronizedPrint("Select an option:");
 
             String input = scanner.nextLine().trim();
@@ -476,11 +641,14 @@ public class TicketingSystemCLI {
                     refundCustomerTicket(customer);
                     break;
                 case "6":
+                    checkoutCustomerTicket(customer);
+                    break;
+                case "7":
                     customerLoggedIn = false;
                     Utils.synchronizedPrint("Logging out...");
                     break;
                 default:
-                    Utils.synchronizedPrint("Invalid option. Please select a number between 1 and 6.");
+                    Utils.synchronizedPrint("Invalid option. Please select a number between 1 and 7.");
                     break;
             }
         }
@@ -488,13 +656,9 @@ public class TicketingSystemCLI {
 
     // Stops the Vendor's ticket releasing task
     private static void stopVendorTask(Vendor vendor) {
-        Future<?> future = vendorTasks.get(vendor.getId());
-        if (future != null && !future.isDone()) {
-            vendor.stopTask();
-            future.cancel(true);
-            vendorTasks.remove(vendor.getId());
+        if (vendorScheduler.stop(vendor)) {
             Utils.synchronizedPrintFormat("Vendor %d stopped releasing tickets.", vendor.getId());
-            Utils.addLog(String.format("Vendor %d stopped releasing tickets.", vendor.getId()));
+            Utils.addLog(LogEventType.VENDOR_STOPPED, vendor.getId(), LogEvent.NONE, LogEvent.NONE);
         } else {
             Utils.synchronizedPrint("Vendor is not currently running.");
         }
@@ -508,7 +672,7 @@ public class TicketingSystemCLI {
             future.cancel(true);
             customerTasks.remove(customer.getId()); // Remove the customer from active tasks
             Utils.synchronizedPrintFormat("Customer %d stopped purchasing tickets.", customer.getId());
-            Utils.addLog(String.format("Customer %d stopped purchasing tickets.", customer.getId()));
+            Utils.addLog(LogEventType.CUSTOMER_STOPPED, customer.getId(), LogEvent.NONE, LogEvent.NONE);
         } else {
             Utils.synchronizedPrint("Customer is not currently running.");
         }
@@ -526,6 +690,8 @@ public class TicketingSystemCLI {
         int releaseInterval = config.getTicketReleaseRate();
 
         vendor.updateParameters(totalTicketsToRelease, ticketsPerRelease, releaseInterval);
+        vendorScheduler.reschedule(vendor);
+        save(vendors, vendor);
         Utils.synchronizedPrint("Releasing parameters updated.");
     }
 
@@ -561,12 +727,38 @@ public class TicketingSystemCLI {
         boolean success = ticketPool.refundTicket(customer.getId(), ticketId);
         if (success) {
             Utils.synchronizedPrintFormat("Ticket ID %d has been successfully refunded.", ticketId);
-            Utils.addLog(String.format("Customer-%d refunded Ticket ID %d.", customer.getId(), ticketId));
+            Utils.addLog(LogEventType.TICKET_REFUNDED, customer.getId(), ticketId, LogEvent.NONE);
         } else {
             Utils.synchronizedPrint("Refund failed. Please ensure the Ticket ID is correct and you own the ticket.");
         }
     }
 
+    // Holds a ticket while the Customer decides, the ticket goes back on sale if the hold runs out first
+    private static void checkoutCustomerTicket(Customer customer) {
+        PurchaseResult hold = ticketPool.holdTicket(customer.getId(), config.getHoldTtl());
+        if (!hold.isSuccess()) {
+            Utils.synchronizedPrint("No tickets are available right now.");
+            return;
+        }
+        int ticketId = hold.getTicket().getId();
+
+        Utils.synchronizedPrintFormat("Ticket ID %d is held for you for %d seconds. Price: LKR %.2f",
+                ticketId, config.getHoldTtl() / 1000, config.getTicketPrice());
+        Utils.synchronizedPrint("Confirm the purchase? (yes/no): ");
+        String confirmation = scanner.nextLine().trim().toLowerCase();
+        if (!(confirmation.equals("yes") || confirmation.equals("y"))) {
+            ticketPool.releaseHold(customer.getId(), ticketId);
+            Utils.synchronizedPrint("Checkout cancelled, the ticket has been released.");
+            return;
+        }
+
+        if (ticketPool.confirmHold(customer.getId(), ticketId)) {
+            Utils.synchronizedPrintFormat("Ticket ID %d has been successfully purchased.", ticketId);
+        } else {
+            Utils.synchronizedPrint("Checkout failed. The hold on the ticket expired before the purchase was confirmed.");
+        }
+    }
+
     // Allows the Customer to update their ticket purchasing parameters
     private static void setCustomerParameters(Customer customer) {
         Utils.synchronizedPrint("Enter total number of tickets you wish to purchase: ");
@@ -575,7 +767,20 @@ public class TicketingSystemCLI {
         // Use system wide customer retrieval interval
         int customerRetrievalInterval = config.getCustomerRetrievalRate();
 
+        Utils.synchronizedPrint("Enter tickets per purchase (1 buys one ticket at a time): ");
+        int purchaseBatchSize = readPositiveInt(scanner);
+        BulkPurchaseMode bulkPurchaseMode = BulkPurchaseMode.BEST_EFFORT;
+        if (purchaseBatchSize > 1) {
+            Utils.synchronizedPrint("Only buy when the whole group is available? (yes/no): ");
+            String answer = scanner.nextLine().trim().toLowerCase();
+            if (answer.equals("yes") || answer.equals("y")) {
+                bulkPurchaseMode = BulkPurchaseMode.ALL_OR_NOTHING;
+            }
+        }
+
         customer.updateParameters(totalTicketsDesired, customerRetrievalInterval);
+        customer.setPurchaseBatch(purchaseBatchSize, bulkPurchaseMode);
+        save(customers, customer);
         Utils.synchronizedPrint("Purchasing parameters updated.");
     }
 
@@ -595,7 +800,7 @@ public class TicketingSystemCLI {
 
             if (ticket.getStatus() == TicketStatus.SOLD) {
                 int ownerId = ticket.getOwnerId();
-                Customer customer = getCustomerById(ownerId);
+                Customer customer = customers.getById(ownerId);
                 if (customer != null) {
                     ownerInfo = String.format(" (Purchased by Customer ID: %d, Name: %s)", ownerId, customer.getName());
                 } else {
@@ -628,33 +833,23 @@ public class TicketingSystemCLI {
         Utils.synchronizedPrintFormat("Total tickets released: %d", ticketPool.getTotalTicketsReleased());
         Utils.synchronizedPrintFormat("Total tickets sold: %d", ticketPool.getTotalTicketsSold());
         Utils.synchronizedPrintFormat("Tickets remaining in pool: %d", ticketPool.getAvailableTickets());
+        Utils.synchronizedPrintFormat("Tickets held at checkout: %d", ticketPool.getTicketsHeld());
         Utils.synchronizedPrintFormat("Active Vendors: %d", vendors.size());
         Utils.synchronizedPrintFormat("Active Customers: %d", customers.size());
         Utils.synchronizedPrint("--------------------------------");
     }
 
-    // Retrieves a Customer object by their Customer ID
-    private static Customer getCustomerById(int customerId) {
-        for (Customer customer : customers) {
-            if (customer.getId() == customerId) {
-                return customer;
-            }
-        }
-        return null;
-    }
-
     // Stops all running Vendor and Customer tasks and shuts down executor services
     private static void stopAllVendorsAndCustomers() {
+        // Stop applying configuration changes before the actors they would reach are stopped
+        configWatcher.close();
+
         // Stop Vendors
-        for (Vendor vendor : vendors) {
+        for (Vendor vendor : vendors.getLoaded()) {
             vendor.stopTask();
-            Future<?> future = vendorTasks.get(vendor.getId());
-            if (future != null) {
-                future.cancel(true);
-            }
         }
         // Stop Customers
-        for (Customer customer : customers) {
+        for (Customer customer : customers.getLoaded()) {
             customer.stopTask();
             Future<?> future = customerTasks.get(customer.getId());
             if (future != null) {
@@ -662,13 +857,15 @@ public class TicketingSystemCLI {
             }
         }
 
-        // Shutdown Executor Services
-        vendorExecutor.shutdownNow();
+        // Shutdown the Vendor Scheduler and Executor Service
         customerExecutor.shutdownNow();
+        credentials.close();
+        ticketPool.stopHoldExpiry();
+        metrics.stopDumping();
 
         try {
-            if (!vendorExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                Utils.synchronizedPrint("Vendor Executor did not terminate in the specified time.");
+            if (!vendorScheduler.shutdown(5, TimeUnit.SECONDS)) {
+                Utils.synchronizedPrint("Vendor Scheduler did not terminate in the specified time.");
             }
             if (!customerExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
                 Utils.synchronizedPrint("Customer Executor did not terminate in the specified time.");
@@ -677,6 +874,17 @@ public class TicketingSystemCLI {
             Utils.synchronizedPrint("Interrupted while waiting for executor termination.");
             Thread.currentThread().interrupt();
         }
+
+        // Write a final snapshot once nothing can change the pool any more
+        persistence.close();
+        vendorStore.close();
+        customerStore.close();
+        if (ticketTable != null) {
+            ticketTable.close();
+        }
+
+        // Flush log entries that are still queued for the log file
+        Utils.shutdownLogWriter();
     }
 
     // Validates the format of a mobile number
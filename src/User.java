@@ -2,14 +2,13 @@ public abstract class User {
     protected final int id;
     protected String name;
     protected String email;
-    protected String password;
+    private volatile PasswordHash passwordHash; // Null until a password is set, such a user cannot log in
     protected String mobileNumber;
 
-    public User(int id, String name, String email, String password, String mobileNumber) {
+    public User(int id, String name, String email, String mobileNumber) {
         this.id = id;
         this.name = name;
         this.email = email;
-        this.password = password;
         this.mobileNumber = mobileNumber;
     }
 
@@ -21,12 +20,21 @@ public abstract class User {
         return name;
     }
 
-    public boolean validatePassword(String inputPassword) {
-        return password.equals(inputPassword);
+    // Passwords are checked through a CredentialStore, which hashes on its own threads
+    public PasswordHash getPasswordHash() {
+        return passwordHash;
+    }
+
+    public void setPasswordHash(PasswordHash passwordHash) {
+        this.passwordHash = passwordHash;
     }
 
     public String getEmail() {
         return email;
     }
 
+    public String getMobileNumber() {
+        return mobileNumber;
+    }
+
 }
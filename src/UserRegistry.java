@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registered users of one kind, indexed by ID and by email
+// Emails are matched without regard to case, and each email can belong to only one user in the registry.
+// Lookups and registration are constant time however many users there are.
+// With a UserStore behind it, every registration is saved and users from earlier runs are loaded on first use.
+public class UserRegistry<T extends User> {
+    private final Map<Integer, T> usersById = new ConcurrentHashMap<>();
+    private final Map<String, T> usersByEmail = new ConcurrentHashMap<>();
+    private final UserStore<T> store; // Null if users are only kept in memory
+
+    public UserRegistry() {
+        this(null);
+    }
+
+    public UserRegistry(UserStore<T> store) {
+        this.store = store;
+    }
+
+    // Adds the user, returns false if the email or the ID is already taken
+    // Throws UncheckedIOException if the user could not be saved, the user is not registered then
+    public boolean register(T user) {
+        String key = emailKey(user.getEmail());
+        if (usersByEmail.putIfAbsent(key, user) != null) {
+            return false;
+        }
+        if (usersById.putIfAbsent(user.getId(), user) != null) {
+            usersByEmail.remove(key, user);
+            return false;
+        }
+        boolean saved = false;
+        try {
+            saved = store == null || store.add(user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save user " + user.getId(), e);
+        } finally {
+            if (!saved) {
+                usersById.remove(user.getId(), user);
+                usersByEmail.remove(key, user);
+            }
+        }
+        return saved;
+    }
+
+    // Saves a registered user's changed settings so they survive a restart
+    public void save(T user) {
+        if (store != null) {
+            try {
+                store.save(user);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to save user " + user.getId(), e);
+            }
+        }
+    }
+
+    public boolean isEmailTaken(String email) {
+        if (usersByEmail.containsKey(emailKey(email))) {
+            return true;
+        }
+        try {
+            return store != null && store.containsEmail(email);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The user with the given ID, null if there is none
+    public T getById(int id) {
+        T user = usersById.get(id);
+        if (user != null || store == null) {
+            return user;
+        }
+        try {
+            return cache(store.load(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The user with the given email in any case, null if there is none
+    public T getByEmail(String email) {
+        T user = usersByEmail.get(emailKey(email));
+        if (user != null || store == null) {
+            return user;
+        }
+        try {
+            return cache(store.loadByEmail(email));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Keeps a user loaded from the store, if another thread loaded it first that copy is returned instead
+    private T cache(T loaded) {
+        if (loaded == null) {
+            return null;
+        }
+        T existing = usersById.putIfAbsent(loaded.getId(), loaded);
+        if (existing != null) {
+            return existing;
+        }
+        usersByEmail.putIfAbsent(emailKey(loaded.getEmail()), loaded);
+        return loaded;
+    }
+
+    // Every registered user in no particular order, users not in memory yet are loaded first
+    public Collection<T> getAll() {
+        if (store != null && usersById.size() < store.size()) {
+            for (int id : store.getIds()) {
+                getById(id);
+            }
+        }
+        return usersById.values();
+    }
+
+    // Live view of the users in memory, the only ones that can have been logged in since startup
+    public Collection<T> getLoaded() {
+        return usersById.values();
+    }
+
+    public int size() {
+        return store != null ? store.size() : usersById.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Highest ID in use, new users are numbered after it
+    public int getHighestId() {
+        int highest = store != null ? store.getHighestId() : 0;
+        for (int id : usersById.keySet()) {
+            highest = Math.max(highest, id);
+        }
+        return highest;
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+// Registered users of one kind kept in an append-only file of length-prefixed records
+// Each record is [length][id, name, email, mobile number, password hash, settings][CRC32C]. Saving a user again
+// appends a newer record that replaces the older one. Opening the file maps it into memory and only indexes where
+// each user's newest record is and a hash of its email. A user is decoded the first time it is asked for, so
+// startup time depends on the size of the file rather than on building every user object.
+public class UserStore<T extends User> {
+    private static final int MAGIC = 0x55535231; // "USR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+    private static final int SCAN_WINDOW_SIZE = 1 << 20; // Larger than any record with its length and checksum
+
+    // Turns the settings of one kind of user into ints and back
+    public interface Codec<T extends User> {
+        int[] settings(T user);
+
+        T create(int id, String name, String email, String mobileNumber, int[] settings);
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Codec<T> codec;
+    private ByteBuffer mapped; // Records that were in the file when it was opened
+    private long end; // Where the next record is appended
+    private long[] offsets = new long[1024]; // Newest record of each user ID, 0 if there is none
+    private int count;
+    private int highestId;
+    private int[] emailHashes = new int[2048]; // Open addressing, a slot is free while its ID is 0
+    private int[] emailIds = new int[2048];
+
+    private UserStore(Path file, FileChannel channel, Codec<T> codec) {
+        this.file = file;
+        this.channel = channel;
+        this.codec = codec;
+    }
+
+    // Opens the file, creating it if there is none, and indexes the records in it
+    // A record cut short by a crash is dropped along with anything after it. The records are indexed through the
+    // channel and the file is cut back before it is mapped, a mapped file cannot be truncated on every platform
+    public static <T extends User> UserStore<T> open(Path file, Codec<T> codec) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+                size = HEADER_SIZE;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            UserStore<T> store = new UserStore<>(file, channel, codec);
+            int valid = store.indexRecords((int) size);
+            if (valid < size) {
+                System.err.printf("Dropping %d bytes of incomplete records at the end of %s%n", size - valid, file.getFileName());
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, valid);
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            store.mapped = mapped; // Records appended from here on are read through the channel
+            store.end = valid;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Indexes the intact records and returns where the last of them ends
+    // Reads the file a window at a time, a window always holds at least one whole record
+    private int indexRecords(int size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW_SIZE);
+        readWindow(window, 0, size);
+        if (size < HEADER_SIZE || window.getInt(0) != MAGIC || window.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a user file");
+        }
+        int windowStart = 0;
+        int position = HEADER_SIZE;
+        CRC32C crc = new CRC32C();
+        while (position + Integer.BYTES <= size) {
+            if (position + Integer.BYTES > windowStart + window.limit()) {
+                windowStart = readWindow(window, position, size);
+            }
+            int length = window.getInt(position - windowStart);
+            int payload = position + Integer.BYTES;
+            if (length <= 0 || length > MAX_RECORD_SIZE || (long) payload + length + Integer.BYTES > size) {
+                break;
+            }
+            if (payload + length + Integer.BYTES > windowStart + window.limit()) {
+                windowStart = readWindow(window, position, size);
+            }
+            int at = payload - windowStart;
+            crc.reset();
+            crc.update(window.duplicate().position(at).limit(at + length));
+            if ((int) crc.getValue() != window.getInt(at + length)) {
+                break;
+            }
+            ByteBuffer record = window.duplicate().position(at).limit(at + length);
+            int id = record.getInt();
+            skipString(record); // Name
+            index(id, emailKey(readString(record)).hashCode(), position);
+            position = payload + length + Integer.BYTES;
+        }
+        return position;
+    }
+
+    // Fills the window with the file from position up to size, returns position
+    private int readWindow(ByteBuffer window, int position, int size) throws IOException {
+        window.clear().limit(Math.min(window.capacity(), size - position));
+        while (window.hasRemaining()) {
+            if (channel.read(window, position + window.position()) < 0) {
+                throw new IOException(file + " ended while it was being read");
+            }
+        }
+        window.flip();
+        return position;
+    }
+
+    private void index(int id, int emailHash, long offset) {
+        if (id >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(id + 1, offsets.length * 2));
+        }
+        if (offsets[id] == 0) {
+            count++;
+            highestId = Math.max(highestId, id);
+            addEmail(emailHash, id);
+        }
+        offsets[id] = offset;
+    }
+
+    private void addEmail(int emailHash, int id) {
+        if ((count + 1) * 2 > emailIds.length) {
+            int[] oldHashes = emailHashes;
+            int[] oldIds = emailIds;
+            emailHashes = new int[oldIds.length * 2];
+            emailIds = new int[oldIds.length * 2];
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    insertEmail(oldHashes[i], oldIds[i]);
+                }
+            }
+        }
+        insertEmail(emailHash, id);
+    }
+
+    private void insertEmail(int emailHash, int id) {
+        int mask = emailIds.length - 1;
+        int slot = mix(emailHash) & mask;
+        while (emailIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        emailHashes[slot] = emailHash;
+        emailIds[slot] = id;
+    }
+
+    // Appends a new user, returns false without writing anything if its email or ID is already in the file
+    public synchronized boolean add(T user) throws IOException {
+        return addNew(user, true);
+    }
+
+    // Like add but leaves the record in the page cache, for bulk imports that call force once at the end
+    public synchronized boolean addUnforced(T user) throws IOException {
+        return addNew(user, false);
+    }
+
+    private boolean addNew(T user, boolean force) throws IOException {
+        if (user.getId() < offsets.length && offsets[user.getId()] != 0 || idForEmail(user.getEmail()) != 0) {
+            return false;
+        }
+        append(user, force);
+        return true;
+    }
+
+    // Forces every record appended so far to disk
+    public synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    // Appends the user's current details, replacing the ones saved before
+    public synchronized void save(T user) throws IOException {
+        append(user, true);
+    }
+
+    private void append(T user, boolean force) throws IOException {
+        ByteBuffer record = encode(user);
+        long offset = end;
+        while (record.hasRemaining()) {
+            channel.write(record, end + record.position());
+        }
+        if (force) {
+            channel.force(false);
+        }
+        end += record.limit();
+        index(user.getId(), emailKey(user.getEmail()).hashCode(), offset);
+    }
+
+    private ByteBuffer encode(T user) {
+        byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] mobile = user.getMobileNumber().getBytes(StandardCharsets.UTF_8);
+        PasswordHash passwordHash = user.getPasswordHash();
+        byte[] salt = passwordHash == null ? new byte[0] : passwordHash.getSalt();
+        byte[] hash = passwordHash == null ? new byte[0] : passwordHash.getHash();
+        int[] settings = codec.settings(user);
+        int length = Integer.BYTES + 3 * Short.BYTES + name.length + email.length + mobile.length
+                + Integer.BYTES + 2 + salt.length + hash.length + 1 + settings.length * Integer.BYTES;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("User " + user.getId() + " is too large to save");
+        }
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+        record.putInt(length);
+        record.putInt(user.getId());
+        putBytes(record, name);
+        putBytes(record, email);
+        putBytes(record, mobile);
+        record.putInt(passwordHash == null ? 0 : passwordHash.getIterations());
+        record.put((byte) salt.length).put(salt);
+        record.put((byte) hash.length).put(hash);
+        record.put((byte) settings.length);
+        for (int setting : settings) {
+            record.putInt(setting);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), Integer.BYTES, length);
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    // The user with the given ID as last saved, null if there is none
+    public synchronized T load(int id) throws IOException {
+        if (id <= 0 || id >= offsets.length || offsets[id] == 0) {
+            return null;
+        }
+        ByteBuffer record = readRecord(offsets[id]);
+        int recordId = record.getInt();
+        String name = readString(record);
+        String email = readString(record);
+        String mobileNumber = readString(record);
+        int iterations = record.getInt();
+        byte[] salt = new byte[Byte.toUnsignedInt(record.get())];
+        record.get(salt);
+        byte[] hash = new byte[Byte.toUnsignedInt(record.get())];
+        record.get(hash);
+        int[] settings = new int[Byte.toUnsignedInt(record.get())];
+        for (int i = 0; i < settings.length; i++) {
+            settings[i] = record.getInt();
+        }
+        T user = codec.create(recordId, name, email, mobileNumber, settings);
+        if (iterations > 0) {
+            user.setPasswordHash(new PasswordHash(salt, hash, iterations));
+        }
+        return user;
+    }
+
+    // The user with the given email in any case, null if there is none
+    public synchronized T loadByEmail(String email) throws IOException {
+        return load(idForEmail(email));
+    }
+
+    public synchronized boolean containsEmail(String email) throws IOException {
+        return idForEmail(email) != 0;
+    }
+
+    // Walks the users whose email hash matches and compares the email in their record, 0 if none has it
+    private int idForEmail(String email) throws IOException {
+        String key = emailKey(email);
+        int emailHash = key.hashCode();
+        int mask = emailIds.length - 1;
+        for (int slot = mix(emailHash) & mask; emailIds[slot] != 0; slot = (slot + 1) & mask) {
+            if (emailHashes[slot] == emailHash) {
+                ByteBuffer record = readRecord(offsets[emailIds[slot]]);
+                record.getInt(); // ID
+                skipString(record); // Name
+                if (emailKey(readString(record)).equals(key)) {
+                    return emailIds[slot];
+                }
+            }
+        }
+        return 0;
+    }
+
+    // The record's payload, straight from the mapping if it was in the file at startup
+    private ByteBuffer readRecord(long offset) throws IOException {
+        if (offset < mapped.limit()) {
+            int length = mapped.getInt((int) offset);
+            int payload = (int) offset + Integer.BYTES;
+            return mapped.duplicate().position(payload).limit(payload + length);
+        }
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(lengthBuffer, offset);
+        ByteBuffer record = ByteBuffer.allocate(lengthBuffer.flip().getInt());
+        readFully(record, offset + Integer.BYTES);
+        return record.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file + " ends inside a record");
+            }
+        }
+    }
+
+    // IDs of every saved user in ID order
+    public synchronized int[] getIds() {
+        int[] ids = new int[count];
+        int next = 0;
+        for (int id = 1; id <= highestId; id++) {
+            if (offsets[id] != 0) {
+                ids[next++] = id;
+            }
+        }
+        return ids;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized int getHighestId() {
+        return highestId;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
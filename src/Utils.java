@@ -1,26 +1,96 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
 public class Utils {
-    public static final List<String> activityLogs = new CopyOnWriteArrayList<>();
+    // Gson is thread safe and costly to build, every JSON file is read and written through this one instance
+    public static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    public static final ActivityLogBuffer activityLogs = new ActivityLogBuffer(Constants.ACTIVITY_LOG_CAPACITY);
     public static final Object consoleLock = new Object(); // To synchronize console output
     private static final String LOG_FILE = Constants.LOG_FILE;
+    private static volatile AsyncLogWriter logWriter;
+    private static volatile boolean logWriterShutdown = false;
+
+    // Starts the background log file writer with the configured batching settings
+    public static synchronized void startLogWriter(Configuration config) {
+        startLogWriter(LOG_FILE, config.getLogFlushInterval(), config.getLogBatchSize(), config.getLogOverflowPolicy());
+    }
+
+    // Starts the background log file writer on another file, the benchmarks use this to keep out of the activity log
+    public static synchronized void startLogWriter(String logFile, int flushInterval, int batchSize,
+                                                   LogOverflowPolicy overflowPolicy) {
+        if (logWriter != null) {
+            logWriter.close();
+        }
+        logWriterShutdown = false;
+        logWriter = createLogWriter(logFile, flushInterval, batchSize, overflowPolicy);
+    }
+
+    // Writes out any queued log entries and closes the log file
+    public static synchronized void shutdownLogWriter() {
+        logWriterShutdown = true;
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+        }
+    }
+
+    // Reports the log queue depth and dropped entries of whichever writer is running when the report is built
+    public static void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("log.queueDepth", () -> {
+            AsyncLogWriter writer = logWriter;
+            return writer == null ? 0 : writer.getQueueDepth();
+        });
+        registry.gauge("log.droppedEntries", () -> {
+            AsyncLogWriter writer = logWriter;
+            return writer == null ? 0 : writer.getDroppedEntries();
+        });
+        registry.gauge("log.entriesInMemory", () -> activityLogs.getNextSequence() - activityLogs.getOldestSequence());
+    }
 
     // Method to add a log entry
     public static void addLog(String log) {
-        activityLogs.add(log);
-        // Write logs to file
-        synchronized (consoleLock) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-                writer.write(log);
-                writer.newLine();
-            } catch (IOException e) {
-                System.err.println("Failed to write to log file: " + e.getMessage());
+        addLog(LogEvent.message(log));
+    }
+
+    // Adds a typed log event, the log line is only rendered when it is written or viewed
+    public static void addLog(LogEventType type, int actorId, int ticketId, int count) {
+        addLog(new LogEvent(type, actorId, ticketId, count, null));
+    }
+
+    public static void addLog(LogEvent event) {
+        activityLogs.append(event);
+        // Hand the event to the log file writer, it is written in the background
+        AsyncLogWriter writer = getLogWriter();
+        if (writer != null) {
+            writer.append(event);
+        }
+    }
+
+    // Starts the writer with default settings if logging happens before startLogWriter is called
+    private static AsyncLogWriter getLogWriter() {
+        AsyncLogWriter writer = logWriter;
+        if (writer == null && !logWriterShutdown) {
+            synchronized (Utils.class) {
+                if (logWriter == null && !logWriterShutdown) {
+                    logWriter = createLogWriter(LOG_FILE, Constants.DEFAULT_LOG_FLUSH_INTERVAL,
+                            Constants.DEFAULT_LOG_BATCH_SIZE, Constants.DEFAULT_LOG_OVERFLOW_POLICY);
+                }
+                writer = logWriter;
             }
         }
+        return writer;
+    }
+
+    private static AsyncLogWriter createLogWriter(String logFile, int flushInterval, int batchSize,
+                                                  LogOverflowPolicy overflowPolicy) {
+        try {
+            return new AsyncLogWriter(logFile, Constants.LOG_QUEUE_CAPACITY, flushInterval, batchSize, overflowPolicy);
+        } catch (IOException e) {
+            System.err.println("Failed to open log file: " + e.getMessage());
+            return null;
+        }
     }
 
     // Synchronized print method
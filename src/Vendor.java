@@ -1,5 +1,3 @@
-import java.util.Map;
-
 public class Vendor extends User implements RunnableTask {
     private final TicketPool ticketPool;
     private volatile int ticketsPerRelease;
@@ -7,64 +5,115 @@ public class Vendor extends User implements RunnableTask {
     private volatile int totalTicketsToRelease;
     private volatile int ticketsReleased;
     private volatile boolean running = true;
+    private volatile boolean waitingForCapacity = false;
+    private final long waitTimeout; // How long to wait for room in a full pool, in milliseconds
 
-    public Vendor(int vendorId, String name, String email, String password, String mobileNumber,
-                  int ticketsPerRelease, int releaseInterval, int totalTicketsToRelease, TicketPool ticketPool) {
-        super(vendorId, name, email, password, mobileNumber);
+    public Vendor(int vendorId, String name, String email, String mobileNumber,
+                  int ticketsPerRelease, int releaseInterval, int totalTicketsToRelease, long waitTimeout,
+                  TicketPool ticketPool) {
+        super(vendorId, name, email, mobileNumber);
         this.ticketsPerRelease = ticketsPerRelease;
         this.releaseInterval = releaseInterval;
         this.totalTicketsToRelease = totalTicketsToRelease;
         this.ticketPool = ticketPool;
         this.ticketsReleased = 0;
+        this.waitTimeout = waitTimeout;
     }
 
+    // Releases one batch of tickets, VendorScheduler calls this once every releaseInterval
+    // Synchronized so a parameter update never lands halfway through a release
     @Override
-    public void run() {
-        while (running && ticketsReleased < totalTicketsToRelease) {
-            try {
-                int ticketsToReleaseNow = Math.min(ticketsPerRelease, totalTicketsToRelease - ticketsReleased);
-
-                Map<String, Object> result = ticketPool.addTickets(ticketsToReleaseNow, this.id);
-                int added = (int) result.get("added");
-                int notAdded = (int) result.get("notAdded");
-                boolean isFull = (boolean) result.get("isFull");
-                ticketsReleased += added;
-
-                // Log ticket releases
-                synchronized (Utils.consoleLock) {
-                    for (int i = 0; i < added; i++) {
-                        Utils.addLog("Vendor-" + id + " released a ticket. Tickets available: " + ticketPool.getAvailableTickets());
-                    }
-                    for (int i = 0; i < notAdded; i++) {
-                        Utils.addLog("Vendor-" + id + " could not release a ticket. Ticket pool is full. Tickets available: " + ticketPool.getAvailableTickets());
-                    }
-                }
+    public synchronized void run() {
+        if (!isReleasing() || waitingForCapacity) {
+            return;
+        }
+        int ticketsToReleaseNow = Math.min(ticketsPerRelease, totalTicketsToRelease - ticketsReleased);
 
-                // If the ticket pool is full, stop releasing tickets
-                if (isFull) {
-                    synchronized (Utils.consoleLock) {
-                        Utils.addLog("Vendor-" + id + ": Ticket pool is full. Stopping ticket releases.");
-                    }
-                    break; // Exit the loop as the pool is full
-                }
+        ReleaseResult result = ticketPool.addTickets(ticketsToReleaseNow, this.id);
+        int added = result.getAdded();
+        int notAdded = result.getNotAdded();
+        boolean isFull = result.isFull();
+        ticketsReleased += added;
 
-                // If all tickets have been released, stop
-                if (ticketsReleased >= totalTicketsToRelease) {
-                    synchronized (Utils.consoleLock) {
-                        Utils.addLog("Vendor-" + id + " has released all tickets.");
-                    }
-                    break; // Exit the loop as the desired number of tickets has been released
-                }
+        // One event for the whole release, carrying how many tickets went in and how many did not
+        if (added > 0) {
+            Utils.addLog(LogEventType.TICKET_RELEASED, id, LogEvent.NONE, added);
+        }
+        if (notAdded > 0) {
+            Utils.addLog(LogEventType.RELEASE_REJECTED, id, LogEvent.NONE, notAdded);
+        }
+
+        // If the ticket pool is full, wait for tickets to be sold, VendorScheduler parks the release job
+        if (isFull) {
+            waitingForCapacity = true;
+            Utils.addLog(LogEventType.VENDOR_WAITING, id, LogEvent.NONE, LogEvent.NONE);
+            return;
+        }
+
+        // If all tickets have been released, stop
+        if (ticketsReleased >= totalTicketsToRelease) {
+            Utils.addLog(LogEventType.VENDOR_COMPLETED, id, LogEvent.NONE, LogEvent.NONE);
+        }
+    }
+
+    // True while the vendor still has tickets to release and has not been stopped
+    public boolean isReleasing() {
+        return running && ticketsReleased < totalTicketsToRelease;
+    }
+
+    public boolean isWaitingForCapacity() {
+        return waitingForCapacity;
+    }
+
+    // Called when a sale has made room in the pool
+    public void resumeAfterWait() {
+        waitingForCapacity = false;
+        Utils.addLog(LogEventType.VENDOR_RESUMED, id, LogEvent.NONE, LogEvent.NONE);
+    }
+
+    // Called when the pool stayed full for the whole wait timeout, the vendor stops releasing
+    public void capacityWaitTimedOut() {
+        waitingForCapacity = false;
+        running = false;
+        Utils.addLog(LogEventType.VENDOR_POOL_FULL, id, LogEvent.NONE, LogEvent.NONE);
+    }
+
+    // Saved settings of a vendor, the release interval is system-wide and comes from the configuration
+    // A vendor loaded while the pool is running picks up from the tickets it released before the restart, so it never
+    // releases its allotment a second time on top of the recovered tickets
+    public static UserStore.Codec<Vendor> storeCodec(Configuration config, TicketPool ticketPool) {
+        return new UserStore.Codec<Vendor>() {
+            @Override
+            public int[] settings(Vendor vendor) {
+                return new int[] {vendor.getTicketsPerRelease(), vendor.getTotalTicketsToRelease()};
+            }
 
-                Thread.sleep(releaseInterval);
-            } catch (InterruptedException e) {
-                running = false;
-                Thread.currentThread().interrupt();
-                synchronized (Utils.consoleLock) {
-                    Utils.addLog("Vendor-" + id + " releasing thread interrupted.");
+            @Override
+            public Vendor create(int id, String name, String email, String mobileNumber, int[] settings) {
+                Vendor vendor = new Vendor(id, name, email, mobileNumber, settings[0], config.getTicketReleaseRate(),
+                        settings[1], config.getWaitTimeout(), ticketPool);
+                if (ticketPool != null) {
+                    vendor.ticketsReleased = Math.min(ticketPool.getTicketCountByVendor(id), vendor.totalTicketsToRelease);
                 }
+                return vendor;
             }
-        }
+        };
+    }
+
+    public int getTicketsPerRelease() {
+        return ticketsPerRelease;
+    }
+
+    public int getTotalTicketsToRelease() {
+        return totalTicketsToRelease;
+    }
+
+    public int getReleaseInterval() {
+        return releaseInterval;
+    }
+
+    public long getWaitTimeout() {
+        return waitTimeout;
     }
 
     @Override
@@ -72,6 +121,11 @@ public class Vendor extends User implements RunnableTask {
         this.running = false;
     }
 
+    // Changes the release interval without touching the release progress, reschedule the vendor to pick it up
+    public synchronized void setReleaseInterval(int releaseInterval) {
+        this.releaseInterval = releaseInterval;
+    }
+
     // Method to update vendor parameters
     public synchronized void updateParameters(int totalTicketsToRelease, int ticketsPerRelease, int releaseInterval) {
         this.totalTicketsToRelease = totalTicketsToRelease;
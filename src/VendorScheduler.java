@@ -0,0 +1,158 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs every vendor as a periodic release job on a small shared scheduler
+// Vendors do not hold a thread between releases, so thousands of them can share a handful of threads
+// A vendor that finds the pool full is parked until a sale makes room, instead of polling
+public class VendorScheduler {
+    private final TicketPool ticketPool;
+    private final ScheduledExecutorService scheduler;
+    // Release job of each running vendor, or its wait timeout while it is parked
+    private final Map<Integer, ScheduledFuture<?>> schedules = new ConcurrentHashMap<>();
+    private final Map<Integer, CapacityWaiter> parked = new ConcurrentHashMap<>();
+
+    public VendorScheduler(TicketPool ticketPool, int threads) {
+        this.ticketPool = ticketPool;
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        this.scheduler = Executors.newScheduledThreadPool(threads,
+                task -> new Thread(task, "vendor-scheduler-" + threadCounter.getAndIncrement()));
+    }
+
+    // Starts releasing tickets for the vendor, returns false if it is already running
+    public synchronized boolean start(Vendor vendor) {
+        if (isRunning(vendor)) {
+            return false;
+        }
+        schedule(vendor);
+        return true;
+    }
+
+    // Stops the vendor's release job, returns false if it was not running
+    public synchronized boolean stop(Vendor vendor) {
+        vendor.stopTask();
+        CapacityWaiter waiter = parked.remove(vendor.getId());
+        if (waiter != null) {
+            waiter.cancel();
+        }
+        ScheduledFuture<?> future = schedules.remove(vendor.getId());
+        if (future == null || future.isDone()) {
+            return false;
+        }
+        future.cancel(false);
+        return true;
+    }
+
+    // Picks up a changed release interval for a running vendor, a parked vendor uses it once it resumes
+    public synchronized void reschedule(Vendor vendor) {
+        if (parked.containsKey(vendor.getId())) {
+            return;
+        }
+        ScheduledFuture<?> future = schedules.remove(vendor.getId());
+        if (future != null && !future.isDone()) {
+            future.cancel(false);
+            schedule(vendor);
+        }
+    }
+
+    public boolean isRunning(Vendor vendor) {
+        ScheduledFuture<?> future = schedules.get(vendor.getId());
+        return future != null && !future.isDone();
+    }
+
+    // Cancels every release job and stops the scheduler threads
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (CapacityWaiter waiter : parked.values()) {
+            waiter.cancel();
+        }
+        parked.clear();
+        for (ScheduledFuture<?> future : schedules.values()) {
+            future.cancel(false);
+        }
+        schedules.clear();
+        scheduler.shutdownNow();
+        return scheduler.awaitTermination(timeout, unit);
+    }
+
+    private void schedule(Vendor vendor) {
+        ReleaseJob job = new ReleaseJob(vendor);
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(job, 0, vendor.getReleaseInterval(), TimeUnit.MILLISECONDS);
+        schedules.put(vendor.getId(), future);
+        job.attach(future);
+    }
+
+    // Swaps the vendor's release job for a capacity wait that gives up after the vendor's wait timeout
+    private synchronized void park(Vendor vendor, ScheduledFuture<?> releaseFuture) {
+        int vendorId = vendor.getId();
+        if (schedules.get(vendorId) != releaseFuture) {
+            return; // Stopped or rescheduled in the meantime
+        }
+        releaseFuture.cancel(false);
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> giveUp(vendor), vendor.getWaitTimeout(), TimeUnit.MILLISECONDS);
+        schedules.put(vendorId, timeout);
+        // The callback runs on the selling customer's thread, so only hand the wake-up to the scheduler there
+        CapacityWaiter waiter = ticketPool.awaitCapacity(() -> scheduler.execute(() -> wake(vendor, timeout)));
+        parked.put(vendorId, waiter);
+    }
+
+    // A sale made room, start releasing again
+    private synchronized void wake(Vendor vendor, ScheduledFuture<?> timeout) {
+        int vendorId = vendor.getId();
+        if (schedules.get(vendorId) != timeout) {
+            return; // Stopped in the meantime
+        }
+        timeout.cancel(false);
+        parked.remove(vendorId);
+        vendor.resumeAfterWait();
+        schedule(vendor);
+    }
+
+    // The pool stayed full for the whole wait timeout
+    private synchronized void giveUp(Vendor vendor) {
+        int vendorId = vendor.getId();
+        CapacityWaiter waiter = parked.remove(vendorId);
+        if (waiter == null || !waiter.cancel()) {
+            return; // Already woken by a sale
+        }
+        schedules.remove(vendorId);
+        vendor.capacityWaitTimedOut();
+    }
+
+    // One release per tick, the job cancels itself once the vendor has nothing left to release
+    private class ReleaseJob implements Runnable {
+        private final Vendor vendor;
+        private volatile ScheduledFuture<?> future;
+
+        ReleaseJob(Vendor vendor) {
+            this.vendor = vendor;
+        }
+
+        void attach(ScheduledFuture<?> future) {
+            this.future = future;
+            afterRelease();
+        }
+
+        @Override
+        public void run() {
+            vendor.run();
+            afterRelease();
+        }
+
+        private void afterRelease() {
+            ScheduledFuture<?> attached = future;
+            if (attached == null) {
+                return;
+            }
+            if (vendor.isWaitingForCapacity()) {
+                park(vendor, attached);
+            } else if (!vendor.isReleasing()) {
+                schedules.remove(vendor.getId(), attached);
+                attached.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Replays a journal from different starting LSNs, a replay must never skip records it cannot find
+class TicketJournalReplayTest {
+    private static final int CUSTOMERS = 4;
+    private static final int TICKETS = 200;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startLogWriter(@TempDir Path logDir) {
+        Utils.startLogWriter(logDir.resolve("test_logs.txt").toString(), Constants.DEFAULT_LOG_FLUSH_INTERVAL,
+                Constants.DEFAULT_LOG_BATCH_SIZE, LogOverflowPolicy.DROP);
+    }
+
+    @AfterAll
+    static void stopLogWriter() {
+        Utils.shutdownLogWriter();
+    }
+
+    // Writes 3 records to the first segment and 2 to the second, which starts at LSN 3
+    private void writeTwoSegments() throws IOException {
+        TicketJournal journal = new TicketJournal(directory, 0, JournalSyncMode.COMMIT, 10, 100);
+        try {
+            journal.awaitDurable(journal.appendRelease(1, 1, 4));
+            journal.awaitDurable(journal.appendSale(7, 1));
+            journal.awaitDurable(journal.appendSale(7, 2));
+            assertEquals(3, journal.rotate());
+            journal.awaitDurable(journal.appendRefund(7, 1));
+            journal.awaitDurable(journal.appendSale(8, 3));
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static List<Byte> replay(Path directory, long fromLsn, long expectedEnd) throws IOException {
+        List<Byte> types = new ArrayList<>();
+        assertEquals(expectedEnd, TicketJournal.replay(directory, fromLsn, (type, a, b, c) -> types.add(type)));
+        return types;
+    }
+
+    @Test
+    void replaysFromTheMiddleOfASegment() throws IOException {
+        writeTwoSegments();
+        assertEquals(List.of(TicketJournal.SALE, TicketJournal.REFUND, TicketJournal.SALE), replay(directory, 2, 5));
+        assertEquals(List.of(TicketJournal.REFUND, TicketJournal.SALE), replay(directory, 3, 5));
+        assertEquals(List.of(), replay(directory, 5, 5));
+    }
+
+    @Test
+    void failsWhenTheRecordsAfterTheSnapshotAreGone() throws IOException {
+        writeTwoSegments();
+        Files.delete(TicketJournal.segmentPath(directory, 0));
+        assertThrows(IOException.class, () -> TicketJournal.replay(directory, 1, (type, a, b, c) -> { }));
+        assertEquals(List.of(TicketJournal.REFUND, TicketJournal.SALE), replay(directory, 3, 5));
+    }
+
+    @Test
+    void readOnlyReplayStopsAtDamageWithoutChangingTheJournal() throws IOException {
+        writeTwoSegments();
+        Path first = TicketJournal.segmentPath(directory, 0);
+        byte[] bytes = Files.readAllBytes(first);
+        bytes[TicketJournal.RECORD_SIZE + 3] ^= 1; // Damage the second record
+        Files.write(first, bytes);
+
+        List<Byte> types = new ArrayList<>();
+        assertEquals(1, TicketJournal.replayReadOnly(directory, 0, (type, a, b, c) -> types.add(type)));
+        assertEquals(List.of(TicketJournal.RELEASE), types);
+        assertArrayEquals(bytes, Files.readAllBytes(first));
+        assertTrue(Files.exists(TicketJournal.segmentPath(directory, 3)));
+
+        // Recovery cuts the segment back to the damage and removes the segment after it
+        assertEquals(List.of(TicketJournal.RELEASE), replay(directory, 0, 1));
+        assertEquals(TicketJournal.RECORD_SIZE, Files.size(first));
+        assertFalse(Files.exists(TicketJournal.segmentPath(directory, 3)));
+    }
+
+    // Each customer buys on one thread while another thread refunds every ticket ID in turn, so refunds land on
+    // tickets the moment they are sold, the journal must still show every sale before its refund
+    @Test
+    void refundRacingItsSaleIsJournaledAfterTheSale() throws Exception {
+        TicketPool pool = TicketPool.createStandalone(TICKETS, 2);
+        TicketJournal journal = new TicketJournal(directory, 0, JournalSyncMode.INTERVAL, 10, 1000);
+        pool.enableJournal(journal);
+        ExecutorService executor = Executors.newFixedThreadPool(CUSTOMERS * 2);
+        try {
+            pool.addTickets(TICKETS, 1);
+            AtomicBoolean buying = new AtomicBoolean(true);
+            List<Future<?>> buyers = new ArrayList<>();
+            List<Future<?>> refunders = new ArrayList<>();
+            for (int c = 1; c <= CUSTOMERS; c++) {
+                int customerId = c;
+                buyers.add(executor.submit(() -> {
+                    for (int round = 0; round < 20_000; round++) {
+                        pool.removeTicket(customerId);
+                    }
+                }));
+                refunders.add(executor.submit(() -> {
+                    while (buying.get()) {
+                        for (int ticketId = 1; ticketId <= TICKETS; ticketId++) {
+                            pool.refundTicket(customerId, ticketId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> buyer : buyers) {
+                buyer.get(2, TimeUnit.MINUTES);
+            }
+            buying.set(false);
+            for (Future<?> refunder : refunders) {
+                refunder.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+            pool.stopHoldExpiry();
+            journal.close();
+        }
+
+        int[] buyerOf = new int[TICKETS + 1];
+        Arrays.fill(buyerOf, -1);
+        TicketJournal.replay(directory, 0, (type, a, b, c) -> {
+            if (type == TicketJournal.SALE) {
+                assertEquals(-1, buyerOf[b], "Ticket " + b + " sold twice without a refund between");
+                buyerOf[b] = a;
+            } else if (type == TicketJournal.REFUND) {
+                assertEquals(a, buyerOf[b], "Refund of ticket " + b + " journaled before its sale");
+                buyerOf[b] = -1;
+            }
+        });
+        for (Ticket ticket : pool.getTicketsByVendor(1)) {
+            assertEquals(buyerOf[ticket.getId()], ticket.getBuyerId(), "Buyer of ticket " + ticket.getId());
+        }
+        for (int customerId = 1; customerId <= CUSTOMERS; customerId++) {
+            int[] indexed = pool.getIndexedTicketIds(customerId);
+            Arrays.sort(indexed);
+            int owner = customerId;
+            int[] expected = IntStream.rangeClosed(1, TICKETS).filter(t -> buyerOf[t] == owner).toArray();
+            assertArrayEquals(expected, indexed, "Owner index of customer " + customerId);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Customers buy and refund tickets at the same time, then the owner index, the ticket states and the pool counts
+// are checked against each other and against what every customer thread knows it owns
+class TicketPoolIndexTest {
+    private static final int CUSTOMERS = 8;
+    private static final int VENDORS = 4;
+    private static final int ROUNDS = 20_000;
+    private static final int CAPACITY = 2_000;
+
+    @TempDir
+    Path tempDir;
+
+    // Keep the sales out of the activity log
+    @BeforeAll
+    static void startLogWriter(@TempDir Path logDir) {
+        Utils.startLogWriter(logDir.resolve("test_logs.txt").toString(), Constants.DEFAULT_LOG_FLUSH_INTERVAL,
+                Constants.DEFAULT_LOG_BATCH_SIZE, LogOverflowPolicy.DROP);
+    }
+
+    @AfterAll
+    static void stopLogWriter() {
+        Utils.shutdownLogWriter();
+    }
+
+    @Test
+    void salesAndRefundsKeepTheIndexConsistent() throws Exception {
+        TicketPool pool = TicketPool.createStandalone(CAPACITY, 4);
+        try {
+            runCustomers(pool);
+        } finally {
+            pool.stopHoldExpiry();
+        }
+    }
+
+    @Test
+    void singleShardPoolKeepsTheIndexConsistent() throws Exception {
+        TicketPool pool = TicketPool.createStandalone(CAPACITY, 1);
+        try {
+            runCustomers(pool);
+        } finally {
+            pool.stopHoldExpiry();
+        }
+    }
+
+    @Test
+    void mappedTablePoolKeepsTheIndexConsistent() throws Exception {
+        MappedTicketTable table = MappedTicketTable.open(tempDir.resolve("tickets.dat"));
+        TicketPool pool = TicketPool.createStandalone(CAPACITY, 4, table);
+        try {
+            runCustomers(pool);
+        } finally {
+            pool.stopHoldExpiry();
+            table.close();
+        }
+    }
+
+    private static void runCustomers(TicketPool pool) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CUSTOMERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> owned = new ArrayList<>();
+        Future<?> vendor = executor.submit(() -> {
+            start.await();
+            // Keep the pool topped up while the customers run, the capacity caps how much is ever on sale
+            for (int round = 0; round < ROUNDS; round++) {
+                pool.addTickets(50, 1 + round % VENDORS);
+                Thread.yield();
+            }
+            return null;
+        });
+        for (int c = 1; c <= CUSTOMERS; c++) {
+            int customerId = 100 + c;
+            owned.add(executor.submit(() -> {
+                start.await();
+                return buyAndRefund(pool, customerId);
+            }));
+        }
+        start.countDown();
+        vendor.get(2, TimeUnit.MINUTES);
+        List<List<Integer>> ownedByCustomer = new ArrayList<>();
+        for (Future<List<Integer>> future : owned) {
+            ownedByCustomer.add(future.get(2, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        checkConsistent(pool, ownedByCustomer);
+    }
+
+    // Mixes single and bulk purchases, refunds of owned tickets, refunds of tickets the customer does not own
+    // and holds that are confirmed or released, returns the IDs the customer owns at the end
+    private static List<Integer> buyAndRefund(TicketPool pool, int customerId) {
+        Random random = new Random(customerId);
+        List<Integer> owned = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            int action = random.nextInt(10);
+            if (action < 3) {
+                PurchaseResult result = pool.removeTicket(customerId);
+                if (result.isSuccess()) {
+                    owned.add(result.getTicket().getId());
+                }
+            } else if (action < 5) {
+                BulkPurchaseResult result = pool.removeTickets(customerId, 1 + random.nextInt(4),
+                        BulkPurchaseMode.BEST_EFFORT);
+                for (int ticketId : result.getTicketIds()) {
+                    owned.add(ticketId);
+                }
+            } else if (action < 8) {
+                if (!owned.isEmpty()) {
+                    int ticketId = owned.remove(random.nextInt(owned.size()));
+                    assertTrue(pool.refundTicket(customerId, ticketId), "Refund of owned ticket " + ticketId);
+                }
+            } else if (action < 9) {
+                // Another customer's ticket or one that was never released, neither may be refunded
+                int ticketId = 1 + random.nextInt(pool.getTotalTicketsReleased() + 10);
+                if (!owned.contains(ticketId)) {
+                    assertFalse(pool.refundTicket(customerId, ticketId), "Refund of ticket " + ticketId + " not owned");
+                }
+            } else {
+                PurchaseResult held = pool.holdTicket(customerId, 60_000);
+                if (held.isSuccess()) {
+                    int ticketId = held.getTicket().getId();
+                    if (random.nextBoolean()) {
+                        assertTrue(pool.confirmHold(customerId, ticketId));
+                        owned.add(ticketId);
+                    } else {
+                        assertTrue(pool.releaseHold(customerId, ticketId));
+                    }
+                }
+            }
+        }
+        return owned;
+    }
+
+    private static void checkConsistent(TicketPool pool, List<List<Integer>> ownedByCustomer) {
+        int released = pool.getTotalTicketsReleased();
+        int[] buyerOf = new int[released + 1];
+        int soldTickets = 0;
+        for (int vendorId = 1; vendorId <= VENDORS; vendorId++) {
+            for (Ticket ticket : pool.getTicketsByVendor(vendorId)) {
+                assertEquals(vendorId, ticket.getVendorId());
+                assertTrue(ticket.getStatus() != TicketStatus.HELD, "Ticket " + ticket.getId() + " is still held");
+                buyerOf[ticket.getId()] = ticket.getBuyerId();
+                if (ticket.getStatus() == TicketStatus.SOLD) {
+                    soldTickets++;
+                }
+            }
+        }
+
+        int totalOwned = 0;
+        for (int c = 1; c <= CUSTOMERS; c++) {
+            int customerId = 100 + c;
+            int[] expected = ownedByCustomer.get(c - 1).stream().mapToInt(Integer::intValue).sorted().toArray();
+            totalOwned += expected.length;
+
+            // Every entry in the raw index is a ticket the customer still owns, with no stale or duplicate IDs
+            int[] indexed = pool.getIndexedTicketIds(customerId);
+            Arrays.sort(indexed);
+            assertArrayEquals(expected, indexed, "Owner index of customer " + customerId);
+
+            List<Integer> listed = new ArrayList<>();
+            PrimitiveIterator.OfInt ids = pool.getTicketIdsByCustomer(customerId);
+            while (ids.hasNext()) {
+                listed.add(ids.nextInt());
+            }
+            assertArrayEquals(expected, listed.stream().mapToInt(Integer::intValue).toArray(),
+                    "Tickets listed for customer " + customerId);
+            assertEquals(expected.length, pool.getTicketsByCustomer(customerId).size());
+
+            int bought = 0;
+            for (int ticketId = 1; ticketId <= released; ticketId++) {
+                if (buyerOf[ticketId] == customerId) {
+                    bought++;
+                }
+            }
+            assertEquals(expected.length, bought, "Tickets whose buyer is customer " + customerId);
+        }
+
+        assertEquals(totalOwned, pool.getTotalTicketsSold());
+        assertEquals(soldTickets, pool.getTotalTicketsSold());
+        assertEquals(0, pool.getTicketsHeld());
+        assertEquals(released - soldTickets, pool.getAvailableTickets());
+    }
+}
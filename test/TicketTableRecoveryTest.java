@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Stops a pool kept in a mapped table without closing it, then recovers the table in place from its checkpoint
+// and the journal written after it
+class TicketTableRecoveryTest {
+    private static final int CAPACITY = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startLogWriter(@TempDir Path logDir) {
+        Utils.startLogWriter(logDir.resolve("test_logs.txt").toString(), Constants.DEFAULT_LOG_FLUSH_INTERVAL,
+                Constants.DEFAULT_LOG_BATCH_SIZE, LogOverflowPolicy.DROP);
+    }
+
+    @AfterAll
+    static void stopLogWriter() {
+        Utils.shutdownLogWriter();
+    }
+
+    private PoolPersistence open(TicketPool pool) throws IOException {
+        return PoolPersistence.open(pool, directory.toString(), JournalSyncMode.COMMIT, 10, 100, 0);
+    }
+
+    @Test
+    void recoversTheTableFromItsCheckpointAndTheJournalTail() throws IOException {
+        Path tableFile = directory.resolve(Constants.TICKET_TABLE_FILE);
+        MappedTicketTable table = MappedTicketTable.open(tableFile);
+        TicketPool pool = TicketPool.createStandalone(CAPACITY, 2, table);
+        PoolPersistence persistence = open(pool);
+        pool.addTickets(1000, 1);
+        pool.removeTickets(7, 300, BulkPurchaseMode.BEST_EFFORT);
+        persistence.takeSnapshot(); // Checkpoints the table
+
+        // After the checkpoint: more releases, a refund, a sale, a hold and a release that never reached the journal
+        pool.addTickets(200, 2);
+        assertTrue(pool.refundTicket(7, 1));
+        assertTrue(pool.removeTicket(8).isSuccess());
+        int held = pool.holdTicket(9, 60_000).getTicket().getId();
+        table.set(1100, 99, Ticket.recoveredState(42)); // Damage a record written after the checkpoint
+        table.append(1201, 3, Ticket.availableState());
+        pool.stopHoldExpiry();
+        int sold = pool.getTotalTicketsSold();
+
+        // Crash, the table and journal are left as they are and the journal is never closed
+        MappedTicketTable reopened = MappedTicketTable.open(tableFile);
+        TicketPool recovered = TicketPool.createStandalone(CAPACITY, 2, reopened);
+        PoolPersistence recovering = open(recovered);
+        try {
+            assertEquals(1200, reopened.size(), "The unjournaled release is dropped");
+            assertEquals(1200, recovered.getTotalTicketsReleased());
+            assertEquals(sold, recovered.getTotalTicketsSold());
+            assertEquals(299, recovered.getTicketsByCustomer(7).size());
+            assertEquals(1, recovered.getTicketsByCustomer(8).size());
+            assertEquals(0, recovered.getTicketsHeld());
+            assertEquals(Ticket.availableState(), reopened.getState(held), "A hold does not survive a restart");
+            assertEquals(2, reopened.getVendorId(1100), "Records written after the checkpoint are rewritten");
+            assertEquals(-1, Ticket.buyerOf(reopened.getState(1100)));
+            assertEquals(1200 - sold, recovered.getAvailableTickets());
+            assertEquals(8, recovering.getHighestCustomerId());
+        } finally {
+            recovered.stopHoldExpiry();
+            recovering.close();
+            reopened.close();
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Vendors and customers loaded from their saved settings continue from the tickets recovered into the pool
+class UserProgressRestoreTest {
+    @BeforeAll
+    static void startLogWriter(@TempDir Path logDir) {
+        Utils.startLogWriter(logDir.resolve("test_logs.txt").toString(), Constants.DEFAULT_LOG_FLUSH_INTERVAL,
+                Constants.DEFAULT_LOG_BATCH_SIZE, LogOverflowPolicy.DROP);
+    }
+
+    @AfterAll
+    static void stopLogWriter() {
+        Utils.shutdownLogWriter();
+    }
+
+    @Test
+    void restoredVendorOnlyReleasesWhatIsLeftOfItsTotal() {
+        TicketPool pool = TicketPool.createStandalone(1000, 2);
+        pool.addTickets(30, 5);
+        pool.removeTickets(9, 10, BulkPurchaseMode.BEST_EFFORT);
+
+        Vendor vendor = Vendor.storeCodec(new Configuration(), pool)
+                .create(5, "Vendor", "v@example.com", "0", new int[] {15, 50});
+        vendor.run();
+        vendor.run();
+        assertEquals(50, pool.getTicketCountByVendor(5));
+        assertFalse(vendor.isReleasing());
+
+        Vendor finished = Vendor.storeCodec(new Configuration(), pool)
+                .create(5, "Vendor", "v@example.com", "0", new int[] {15, 40});
+        assertFalse(finished.isReleasing());
+        assertEquals(50, pool.getTotalTicketsReleased());
+        pool.stopHoldExpiry();
+    }
+
+    @Test
+    void restoredCustomerCountsTheTicketsTheyOwn() {
+        TicketPool pool = TicketPool.createStandalone(1000, 2);
+        pool.addTickets(100, 1);
+        BulkPurchaseResult bought = pool.removeTickets(9, 10, BulkPurchaseMode.BEST_EFFORT);
+        pool.refundTicket(9, bought.getTicketId(0));
+
+        Customer customer = Customer.storeCodec(new Configuration(), pool)
+                .create(9, "Customer", "c@example.com", "0", new int[] {12, 5, BulkPurchaseMode.BEST_EFFORT.ordinal()});
+        customer.run();
+        assertEquals(12, pool.getTicketCountByCustomer(9), "Only the three tickets still wanted are bought");
+        assertEquals(12, pool.getTotalTicketsSold());
+        pool.stopHoldExpiry();
+    }
+}